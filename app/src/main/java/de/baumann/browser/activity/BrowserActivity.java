@@ -87,18 +87,23 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.baumann.browser.GithubStar;
 import de.baumann.browser.Utils;
 import de.baumann.browser.browser.AdBlock;
 import de.baumann.browser.browser.AlbumController;
 import de.baumann.browser.browser.BannerBlock;
+import de.baumann.browser.browser.BlockingStats;
 import de.baumann.browser.browser.BrowserContainer;
 import de.baumann.browser.browser.BrowserController;
 import de.baumann.browser.browser.Cookie;
 import de.baumann.browser.browser.DOM;
 import de.baumann.browser.browser.DataURIParser;
 import de.baumann.browser.browser.Javascript;
+import de.baumann.browser.browser.Whitelist;
+import de.baumann.browser.database.Databases;
 import de.baumann.browser.database.FaviconHelper;
 import de.baumann.browser.database.Record;
 import de.baumann.browser.database.RecordAction;
@@ -158,6 +163,7 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
     private BottomAppBar bottomAppBar;
 
     private BroadcastReceiver downloadReceiver;
+    private Future<Object> preload;
 
     private Activity activity;
     private Context context;
@@ -273,9 +279,11 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
 
         new AdBlock(context);
         new BannerBlock(context);
-        new Javascript(context);
-        new Cookie(context);
-        new DOM(context);
+        preload = Databases.read(() -> {  //read whitelists and bookmarks before the first page is loaded, see awaitPreload
+            Whitelist.preload(context);
+            RecordAction.preloadBookmarks(context);
+            return null;
+        }, null);
 
         downloadReceiver = new BroadcastReceiver() {
 
@@ -747,11 +755,7 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
             if (menuItem.getItemId() == R.id.bookmarks) {
                 omniBox_overview.setImageResource(R.drawable.icon_bookmark_light);
 
-                RecordAction action = new RecordAction(context);
-                action.open(false);
-                final List<Record> list;
-                list = action.listBookmark(activity, filter, filterBy);
-                action.close();
+                final List<Record> list = RecordAction.pageBookmarks(activity, filter, filterBy, () -> adapter.notifyDataSetChanged());
 
                 adapter = new RecordAdapter(context, list){
                     @SuppressWarnings("NullableProblems")
@@ -768,10 +772,12 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
                 adapter.notifyDataSetChanged();
                 filter = false;
                 listView.setOnItemClickListener((parent, view, position, id) -> {
+                    if (list.get(position) == null) return;  //page not read yet
                     ninjaWebView.loadUrl(list.get(position).getURL());
                     hideOverview();
                 });
                 listView.setOnItemLongClickListener((parent, view, position, id) -> {
+                    if (list.get(position) == null) return true;
                     showContextMenuList(adapter, list, position);
                     return true;
                 });
@@ -1114,6 +1120,17 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
             }
         });
 
+        TextView blockingStats = dialogView.findViewById(R.id.tv_blocking_stats);
+        String statsSummary = getString(R.string.setting_tab) + ": " + ninjaWebView.getBlockingStats().getSummary(context) + "\n\u03a3: " + BlockingStats.getGlobalSummary(context);
+        blockingStats.setText(statsSummary);
+        blockingStats.setOnClickListener(view -> {
+            Intent sharingIntent = new Intent(Intent.ACTION_SEND);
+            sharingIntent.setType("text/plain");
+            sharingIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.setting_title_adblock));
+            sharingIntent.putExtra(Intent.EXTRA_TEXT, ninjaWebView.getUrl() + "\n" + statsSummary);
+            context.startActivity(Intent.createChooser(sharingIntent, null));
+        });
+
         ImageButton ib_info = dialogView.findViewById(R.id.ib_info);
         ib_info.setOnClickListener(view -> {
             if (ninjaWebView != null) {
@@ -1125,7 +1142,19 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
 
 
     @SuppressLint("ClickableViewAccessibility")
+    //the main thread never reads whitelists and bookmarks itself, the settings of the first pages need them loaded
+    private void awaitPreload() {
+        if (preload == null) return;
+        try {
+            preload.get();
+        } catch (ExecutionException | InterruptedException e) {
+            Log.w("browser", "Error reading whitelists and bookmarks", e);
+        }
+        preload = null;
+    }
+
     private synchronized void addAlbum(String title, final String url, final boolean foreground, final String settings) {
+        awaitPreload();
         ninjaWebView = new NinjaWebView(context);
         ninjaWebView.setBrowserController(this);
         ninjaWebView.setAlbumTitle(title, url);
@@ -1282,31 +1311,23 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
             } else {
                 omniBox_tab.setImageResource(R.drawable.icon_alert);
 
-                RecordAction action = new RecordAction(context);
-                action.open(false);
-                final List<Record> list;
-                list = action.listBookmark(activity, filter, filterBy);
-                action.close();
-                for (Record record : list){
-                    if (record.getURL().equals(url)) {
-                        omniBox_tab.setOnClickListener(v -> showTabView());
-                        break;
-                    } else {
-                        omniBox_tab.setOnClickListener(v -> {
-                            MaterialAlertDialogBuilder builderR = new MaterialAlertDialogBuilder(context);
-                            builderR.setMessage(R.string.toast_unsecured);
-                            builderR.setPositiveButton(R.string.app_ok, (dialog, whichButton) -> ninjaWebView.loadUrl(url.replace("http://", "https://")));
-                            builderR.setNegativeButton(R.string.app_cancel, (dialog, whichButton) -> {
-                                dialog.cancel();
-                                omniBox_tab.setImageResource(R.drawable.icon_menu_light);
-                                omniBox_tab.setOnClickListener(v2 -> showTabView());
-                            });
-                            AlertDialog dialog = builderR.create();
-                            dialog.show();
-                            Objects.requireNonNull(dialog.getWindow()).setGravity(Gravity.BOTTOM);
-                        });
-                    }
-                }
+                omniBox_tab.setOnClickListener(v -> {
+                    MaterialAlertDialogBuilder builderR = new MaterialAlertDialogBuilder(context);
+                    builderR.setMessage(R.string.toast_unsecured);
+                    builderR.setPositiveButton(R.string.app_ok, (dialog, whichButton) -> ninjaWebView.loadUrl(url.replace("http://", "https://")));
+                    builderR.setNegativeButton(R.string.app_cancel, (dialog, whichButton) -> {
+                        dialog.cancel();
+                        omniBox_tab.setImageResource(R.drawable.icon_menu_light);
+                        omniBox_tab.setOnClickListener(v2 -> showTabView());
+                    });
+                    AlertDialog dialog = builderR.create();
+                    dialog.show();
+                    Objects.requireNonNull(dialog.getWindow()).setGravity(Gravity.BOTTOM);
+                });
+                //no warning for bookmarked http sites, checked off the UI thread as this runs on every progress change
+                Databases.read(() -> RecordAction.findBookmark(context, url) != null, isBookmark -> {
+                    if (Boolean.TRUE.equals(isBookmark) && url.equals(ninjaWebView.getUrl())) omniBox_tab.setOnClickListener(v -> showTabView());
+                });
             }
         }
     }
@@ -1549,8 +1570,10 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
 
     private void saveBookmark() {
 
-        FaviconHelper faviconHelper = new FaviconHelper(context);
-        faviconHelper.addFavicon(ninjaWebView.getUrl(),ninjaWebView.getFavicon());
+        FaviconHelper faviconHelper = FaviconHelper.getInstance(context);
+        String url = ninjaWebView.getUrl();
+        Bitmap favicon = ninjaWebView.getFavicon();
+        Databases.write(() -> faviconHelper.addFavicon(url, favicon));
         int value= 11;  //default red icon
         Record bookmark = new Record(ninjaWebView.getTitle(), ninjaWebView.getUrl(), 0, ninjaWebView.isDesktopMode(), ninjaWebView.getSettings().getJavaScriptEnabled(),ninjaWebView.getSettings().getDomStorageEnabled(),value);
         editBookmark(bookmark);
@@ -1593,8 +1616,7 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
             MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(context);
             builder.setMessage(R.string.toast_quit);
             builder.setPositiveButton(R.string.app_ok, (dialog, whichButton) -> {
-                FaviconHelper db=new FaviconHelper(context);
-                db.cleanUpFaviconDB(context);
+                FaviconHelper.cleanUp(context);
                 finish();});
             builder.setNegativeButton(R.string.app_cancel, (dialog, whichButton) -> dialog.cancel());
             AlertDialog dialog = builder.create();
@@ -1836,10 +1858,9 @@ public class BrowserActivity extends AppCompatActivity implements BrowserControl
                     builderSubMenu = new MaterialAlertDialogBuilder(context);
                     builderSubMenu.setMessage(R.string.hint_database);
                     builderSubMenu.setPositiveButton(R.string.app_ok, (dialog2, whichButton) -> {
-                        Record record = recordList.get(pos);
                         RecordAction action = new RecordAction(context);
                         action.open(true);
-                        action.deleteURL(record.getURL(), RecordUnit.TABLE_BOOKMARK);
+                        action.deleteURL(url, RecordUnit.TABLE_BOOKMARK);
                         action.close();
                         recordList.remove(pos);
                         adapterRecord.notifyDataSetChanged();
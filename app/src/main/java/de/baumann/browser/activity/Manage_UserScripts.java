@@ -62,7 +62,7 @@ public class Manage_UserScripts extends AppCompatActivity {
         setSupportActionBar(toolbar);
         Objects.requireNonNull(getSupportActionBar()).setDisplayHomeAsUpEnabled(true);
 
-        UserScriptsHelper userScriptsHelper = new UserScriptsHelper(this);
+        UserScriptsHelper userScriptsHelper = UserScriptsHelper.getInstance(this);
         userScripts = userScriptsHelper.getAllScripts();
 
         editText = findViewById(R.id.edit_script);
@@ -137,7 +137,7 @@ public class Manage_UserScripts extends AppCompatActivity {
             MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(this);
             builder.setMessage(R.string.hint_database);
             builder.setPositiveButton(R.string.app_ok, (dialog, whichButton) -> {
-                UserScriptsHelper userScriptsHelper = new UserScriptsHelper(this);
+                UserScriptsHelper userScriptsHelper = UserScriptsHelper.getInstance(this);
                 userScriptsHelper.deleteAllScripts();
                 userScripts.clear();
                 adapter.notifyDataSetChanged();
@@ -52,7 +52,7 @@ public class Whitelist_Cookie extends AppCompatActivity {
 
         RecordAction action = new RecordAction(this);
         action.open(false);
-        list = action.listDomains(RecordUnit.TABLE_COOKIE);
+        list = action.listDomains(RecordUnit.PERMISSION_COOKIE);
         action.close();
 
         ListView listView = findViewById(R.id.whitelist);
@@ -87,7 +87,7 @@ public class Whitelist_Cookie extends AppCompatActivity {
             } else {
                 RecordAction action1 = new RecordAction(Whitelist_Cookie.this);
                 action1.open(true);
-                if (action1.checkDomain(domain, RecordUnit.TABLE_COOKIE)) {
+                if (action1.checkDomain(domain, RecordUnit.PERMISSION_COOKIE)) {
                     NinjaToast.show(Whitelist_Cookie.this, R.string.toast_domain_already_exists);
                 } else {
                     Cookie cookie = new Cookie(Whitelist_Cookie.this);
@@ -51,7 +51,7 @@ public class Whitelist_DOM extends AppCompatActivity {
 
         RecordAction action = new RecordAction(this);
         action.open(false);
-        list = action.listDomains(RecordUnit.TABLE_DOM);
+        list = action.listDomains(RecordUnit.PERMISSION_DOM);
         action.close();
 
         ListView listView = findViewById(R.id.whitelist);
@@ -86,7 +86,7 @@ public class Whitelist_DOM extends AppCompatActivity {
             } else {
                 RecordAction action1 = new RecordAction(Whitelist_DOM.this);
                 action1.open(true);
-                if (action1.checkDomain(domain, RecordUnit.TABLE_DOM)) {
+                if (action1.checkDomain(domain, RecordUnit.PERMISSION_DOM)) {
                     NinjaToast.show(Whitelist_DOM.this, R.string.toast_domain_already_exists);
                 } else {
                     DOM.addDomain(domain.trim());
@@ -52,7 +52,7 @@ public class Whitelist_Javascript extends AppCompatActivity {
 
         RecordAction action = new RecordAction(this);
         action.open(false);
-        list = action.listDomains(RecordUnit.TABLE_JAVASCRIPT);
+        list = action.listDomains(RecordUnit.PERMISSION_JAVASCRIPT);
         action.close();
 
         ListView listView = findViewById(R.id.whitelist);
@@ -87,7 +87,7 @@ public class Whitelist_Javascript extends AppCompatActivity {
             } else {
                 RecordAction action1 = new RecordAction(Whitelist_Javascript.this);
                 action1.open(true);
-                if (action1.checkDomain(domain, RecordUnit.TABLE_JAVASCRIPT)) {
+                if (action1.checkDomain(domain, RecordUnit.PERMISSION_JAVASCRIPT)) {
                     NinjaToast.show(Whitelist_Javascript.this, R.string.toast_domain_already_exists);
                 } else {
                     Javascript adBlock = new Javascript(Whitelist_Javascript.this);
@@ -5,28 +5,38 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.AssetManager;
+import android.net.Uri;
 import android.text.SpannableStringBuilder;
 import android.text.style.RelativeSizeSpan;
 import android.util.Log;
+import android.util.LruCache;
 import android.widget.Toast;
 
 import androidx.preference.PreferenceManager;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
 
 import de.baumann.browser.R;
 import de.baumann.browser.unit.BrowserUnit;
@@ -34,7 +44,19 @@ import de.baumann.browser.unit.BrowserUnit;
 @SuppressWarnings("ResultOfMethodCallIgnored")
 public class AdBlock {
     private static final String FILE = "hosts.txt";
-    private static final Set<String> hosts = new HashSet<>();
+    private static final String SNAPSHOT = "hosts.bin";  //prebuilt HostTries of all sources plus custom hosts, memory mapped at startup
+    private static final int SNAPSHOT_MAGIC = 0x4e424854;
+    private static final int SNAPSHOT_VERSION = 4;
+    private static final String LIST_PREFIX = "adblock_list_";  //cached subscriptions, one rule per line
+    private static final int LIST_VERSION = 2;  //raise when BlockListSource.parseLine changes, older cached rules are deleted as unused and downloaded again
+    private static final int MAX_PARALLEL = 3;
+    private static final int VERDICT_CACHE_SIZE = 1024;
+    private static final int BLOCKED = 1, THIRD_PARTY = 2, EXCEPTION = 4;  //verdict flags
+    private static volatile HostTrie[] hosts = emptyLists();  //one trie per BlockListSource rule type, never modified
+    private static volatile LruCache<String, Integer> verdicts = new LruCache<>(VERDICT_CACHE_SIZE);  //host -> verdict flags, replaced together with hosts
+    private static final LongAdder verdictHits = new LongAdder();
+    private static final LongAdder verdictMisses = new LongAdder();
+    private static final AtomicBoolean loading = new AtomicBoolean();  //a tab started loadHosts, the others do not start it again
     @SuppressLint("ConstantLocale")
     private static final Locale locale = Locale.getDefault();
 
@@ -46,6 +68,9 @@ public class AdBlock {
             return "";
         }
 
+        String snapshotDate = readSnapshotDate(context, getSourcesKey(context, getSources(context)));
+        if (snapshotDate != null) return snapshotDate;
+
         try {
             FileReader in = new FileReader(file);
             BufferedReader reader = new BufferedReader(in) ;
@@ -65,103 +90,251 @@ public class AdBlock {
         return date;
     }
 
+    //the selected StevenBlack list first, followed by the additional subscriptions
+    private static List<BlockListSource> getSources(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        File dir = context.getDir("filesdir", Context.MODE_PRIVATE);
+        List<BlockListSource> sources = new ArrayList<>();
+        sources.add(new BlockListSource(sp.getString("ab_hosts", "https://raw.githubusercontent.com/StevenBlack/hosts/master/hosts"), new File(dir, FILE), true));
+        if (sp.getBoolean("abSubscriptionsSwitch", false)) {
+            Set<String> urls = new LinkedHashSet<>(Arrays.asList(sp.getString("sp_ab_subscriptions", "").trim().split("\\s+")));
+            for (String url : urls) {
+                if (url.startsWith(BrowserUnit.URL_SCHEME_HTTP) || url.startsWith(BrowserUnit.URL_SCHEME_HTTPS))
+                    sources.add(new BlockListSource(url, new File(dir, LIST_PREFIX + "v" + LIST_VERSION + "_" + Integer.toHexString(url.hashCode()) + ".txt"), false));
+            }
+        }
+        return sources;
+    }
+
     private static void loadHosts(final Context context) {
+        List<BlockListSource> sources = getSources(context);
+        long sourcesKey = getSourcesKey(context, sources);
+
         Thread thread = new Thread(() -> {
+            Snapshot snapshot = readSnapshot(context, sourcesKey);
+            if (snapshot != null) {
+                setHosts(snapshot.tries);  //mapped and checked once, no parsing needed
+                CosmeticFilter.load(context);
+                loading.set(false);
+                return;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLEL);
             try {
-                File file = new File(context.getDir("filesdir", Context.MODE_PRIVATE) + "/"+FILE);
-                FileReader in = new FileReader(file);
-                BufferedReader reader = new BufferedReader(in) ;
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.startsWith("#") || line.isBlank())  continue;
-                    hosts.add(line.toLowerCase(locale));
-                }
-                in.close();
-                SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-                if (sp.getBoolean("customHostListSwitch", false)){
-                    String customHostsList = sp.getString("sp_custom_host_list","");
-                    Scanner scanner = new Scanner(customHostsList);
-                    while (scanner.hasNextLine()){
-                        line = scanner.nextLine();
-                        if (line.startsWith("#") || line.isBlank())  continue;
-                        hosts.add(line.toLowerCase(locale));
-                     }
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (BlockListSource source : sources) {
+                    if (source.file.exists()) tasks.add(() -> { source.readCached(); return null; });
                 }
-            } catch (IOException i) {
+                for (Future<Void> future : executor.invokeAll(tasks)) future.get();
+                publishHosts(context, sources);
+            } catch (IOException | InterruptedException | ExecutionException i) {
                 Log.w("browser", "Error loading AdBlock hosts", i);
+            } finally {
+                executor.shutdown();
+                loading.set(false);
             }
         });
         thread.start();
     }
 
-    public static void downloadHosts(final Context context) {
-        Thread thread = new Thread(() -> {
+    //merges all sources and the custom hosts, swaps in the complete lists at once and saves them as snapshot for the next start
+    private static void publishHosts(Context context, List<BlockListSource> sources) throws IOException {
+        HostTrie.Builder[] builders = BlockListSource.newBuilders();
+        List<String> cosmetic = new ArrayList<>();
+        for (BlockListSource source : sources) {
+            if (source.builders == null) continue;
+            for (int i = 0; i < BlockListSource.TYPES; i++) builders[i].addAll(source.builders[i]);
+            cosmetic.addAll(source.cosmetic);
+            source.builders = null;
+            source.cosmetic = null;
+            Log.d("browser", "AdBlock source " + source.url + ": " + source.count + " rules in " + source.millis + " ms" + (source.changed ? " (downloaded)" : ""));
+        }
+        Scanner scanner = new Scanner(getCustomHosts(context));
+        while (scanner.hasNextLine()){
+            BlockListSource.Rule rule = BlockListSource.parseLine(scanner.nextLine());
+            if (rule != null) builders[rule.type].add(rule.host);
+        }
+        HostTrie[] tries = new HostTrie[BlockListSource.TYPES];
+        for (int i = 0; i < BlockListSource.TYPES; i++) tries[i] = builders[i].build();
+        setHosts(tries);
+        Log.d("browser", "AdBlock hosts merged: " + tries[BlockListSource.BLOCK].size() + " blocked, " + tries[BlockListSource.THIRD_PARTY].size() + " third-party, "
+                + tries[BlockListSource.EXCEPTION].size() + " exceptions, " + tries[BlockListSource.DOCUMENT].size() + " allowed sites");
+        writeSnapshot(context, tries, sources.get(0).date, getSourcesKey(context, sources));
+        CosmeticFilter.update(context, cosmetic);
+    }
 
-            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-            String hostURL = sp.getString("ab_hosts", "https://raw.githubusercontent.com/StevenBlack/hosts/master/hosts");
+    private static HostTrie[] emptyLists() {
+        HostTrie[] tries = new HostTrie[BlockListSource.TYPES];
+        Arrays.fill(tries, HostTrie.EMPTY);
+        return tries;
+    }
 
-            try {
-                URL url = new URL(hostURL);
-                Log.d("browser","Download AdBlock hosts");
+    private static void setHosts(HostTrie[] tries) {
+        hosts = tries;
+        verdicts = new LruCache<>(VERDICT_CACHE_SIZE);  //set after hosts, so a cache never holds verdicts of older lists
+    }
 
-                SpannableStringBuilder biggerText = new SpannableStringBuilder("\u27f3 " + context.getResources().getString(R.string.setting_title_adblock));
-                biggerText.setSpan(new RelativeSizeSpan(1.35f), 0, 1, 0);
-                ((Activity) context).runOnUiThread(() -> {
-                    Toast.makeText(context, biggerText, Toast.LENGTH_LONG).show();
-                });
-                URLConnection ucon = url.openConnection();
-                ucon.setReadTimeout(5000);
-                ucon.setConnectTimeout(10000);
+    //sites with a "@@||domain^$document" rule, nothing is blocked on their pages
+    static boolean isAllowlisted(String domain) {
+        return hosts[BlockListSource.DOCUMENT].matches(domain, 0, domain.length());
+    }
 
-                InputStream is = ucon.getInputStream();
-                BufferedInputStream inStream = new BufferedInputStream(is, 1024 * 5);
+    public static long getVerdictCacheHits() {
+        return verdictHits.sum();
+    }
 
-                File tempfile = new File(context.getDir("filesdir", Context.MODE_PRIVATE) + "/temp.txt");
+    public static long getVerdictCacheMisses() {
+        return verdictMisses.sum();
+    }
 
-                if (tempfile.exists())
-                {
-                    tempfile.delete();
-                }
-                tempfile.createNewFile();
+    private static String getCustomHosts(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getBoolean("customHostListSwitch", false) ? sp.getString("sp_custom_host_list", "") : "";
+    }
 
-                FileOutputStream outStream = new FileOutputStream(tempfile);
-                byte[] buff = new byte[5 * 1024];
+    //identifies the exact input of a snapshot: every cached source file plus the custom hosts
+    private static long getSourcesKey(Context context, List<BlockListSource> sources) {
+        StringBuilder key = new StringBuilder(getCustomHosts(context));
+        for (BlockListSource source : sources) {
+            key.append('\n').append(source.file.getName()).append(':').append(source.file.length()).append(':').append(source.file.lastModified());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(key.toString().getBytes(StandardCharsets.UTF_8));
+        return ((long) key.toString().hashCode() << 32) | crc.getValue();
+    }
 
-                int len;
-                while ((len = inStream.read(buff)) != -1)
-                {
-                    outStream.write(buff, 0, len);
-                }
+    private static final class Snapshot {
+        String date;
+        HostTrie[] tries;
+    }
 
-                outStream.flush();
-                outStream.close();
-                inStream.close();
-
-                //now remove leading 0.0.0.0 from file
-                FileReader in = new FileReader(tempfile);
-                BufferedReader reader = new BufferedReader(in) ;
-                File outfile = new File(context.getDir("filesdir", Context.MODE_PRIVATE) + "/"+FILE);
-                FileWriter out = new FileWriter(outfile);
-                String line;
-                boolean foundStart = false;
-                while ((line = reader.readLine()) != null) {
-                    if (line.startsWith("# Start StevenBlack")) foundStart = true;
-                    if (line.startsWith("0.0.0.0 ")) {
-                        line=line.substring(8);
-                    }
-                    if (foundStart || line.startsWith("#")) out.write(line+"\n");
-                }
-                in.close();
-                out.close();
+    //only the header, without mapping and checking the tries
+    private static String readSnapshotDate(Context context, long sourcesKey) {
+        File file = new File(context.getDir("filesdir", Context.MODE_PRIVATE) + "/"+SNAPSHOT);
+        if (!file.exists()) return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(20);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            header.flip();
+            if (header.remaining() < 20 || header.getInt() != SNAPSHOT_MAGIC || header.getInt() != SNAPSHOT_VERSION) return null;
+            if (header.getLong() != sourcesKey) return null;
+            int dateLength = header.getInt();
+            if (dateLength < 0 || dateLength > channel.size() - 20) return null;
+            ByteBuffer date = ByteBuffer.allocate(dateLength);
+            while (date.hasRemaining() && channel.read(date) >= 0);
+            if (date.hasRemaining()) return null;
+            return new String(date.array(), StandardCharsets.UTF_8);
+        } catch (IOException i) {
+            Log.w("browser", "Error reading AdBlock snapshot", i);
+            return null;
+        }
+    }
+
+    // header: magic, version, sources key, date length, date, then for every trie its length, checksum and data
+    private static Snapshot readSnapshot(Context context, long sourcesKey) {
+        File file = new File(context.getDir("filesdir", Context.MODE_PRIVATE) + "/"+SNAPSHOT);
+        if (!file.exists()) return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());  //stays valid after close
+            if (buffer.remaining() < 20 || buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) return null;
+            if (buffer.getLong() != sourcesKey) return null;
+            int dateLength = buffer.getInt();
+            if (dateLength < 0 || dateLength > buffer.remaining()) return null;
+            byte[] date = new byte[dateLength];
+            buffer.get(date);
+            Snapshot snapshot = new Snapshot();
+            snapshot.tries = new HostTrie[BlockListSource.TYPES];
+            for (int i = 0; i < BlockListSource.TYPES; i++) {
+                if (buffer.remaining() < 8) return null;
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) return null;
+                ByteBuffer data = buffer.slice();
+                data.limit(length);
+                buffer.position(buffer.position() + length);
+                snapshot.tries[i] = HostTrie.read(data);
+                if (snapshot.tries[i].checksum() != checksum) return null;
+            }
+            snapshot.date = new String(date, StandardCharsets.UTF_8);
+            return snapshot;
+        } catch (IOException i) {
+            Log.w("browser", "Error reading AdBlock snapshot", i);
+            return null;
+        }
+    }
 
-                tempfile.delete();
+    private static void writeSnapshot(Context context, HostTrie[] tries, String date, long sourcesKey) throws IOException {
+        File dir = context.getDir("filesdir", Context.MODE_PRIVATE);
+        File tempfile = File.createTempFile(SNAPSHOT, ".tmp", dir);
+        byte[] dateBytes = date.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(20 + dateBytes.length);
+        header.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(sourcesKey).putInt(dateBytes.length).put(dateBytes);
+        header.flip();
+        try (FileChannel channel = FileChannel.open(tempfile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) channel.write(header);
+            for (HostTrie trie : tries) {
+                ByteBuffer length = ByteBuffer.allocate(8);
+                length.putInt(trie.byteSize()).putInt(trie.checksum());
+                length.flip();
+                while (length.hasRemaining()) channel.write(length);
+                trie.writeTo(channel);
+            }
+            channel.force(false);
+        } catch (IOException i) {
+            tempfile.delete();
+            throw i;
+        }
+        Files.move(tempfile.toPath(), new File(dir, SNAPSHOT).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-                hosts.clear();
-                loadHosts(context);  //reload hosts after update
-                Log.w("browser", "AdBlock hosts updated");
+    public static void downloadHosts(final Context context) {
+        Thread thread = new Thread(() -> {
+            Log.d("browser","Download AdBlock hosts");
+
+            SpannableStringBuilder biggerText = new SpannableStringBuilder("\u27f3 " + context.getResources().getString(R.string.setting_title_adblock));
+            biggerText.setSpan(new RelativeSizeSpan(1.35f), 0, 1, 0);
+            ((Activity) context).runOnUiThread(() -> {
+                Toast.makeText(context, biggerText, Toast.LENGTH_LONG).show();
+            });
+
+            //every source is fetched and parsed on its own, then all are merged into one trie
+            List<BlockListSource> sources = getSources(context);
+            ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLEL);
+            boolean changed = false;
+            boolean failed = false;
+            try {
+                List<Future<BlockListSource>> futures = new ArrayList<>();
+                for (BlockListSource source : sources) futures.add(executor.submit(() -> { source.fetch(context); return source; }));
+                for (Future<BlockListSource> future : futures) {
+                    try {
+                        changed |= future.get().changed;
+                    } catch (ExecutionException e) {
+                        Log.w("browser", "Error updating AdBlock hosts", e.getCause());
+                        failed = true;
+                    }
+                }
+                deleteUnusedLists(context, sources);
 
-            } catch (IOException i) {
+                if (changed) {
+                    List<Callable<Void>> tasks = new ArrayList<>();  //unchanged sources come from their cached copy
+                    for (BlockListSource source : sources) {
+                        if (source.builders == null && source.file.exists()) tasks.add(() -> { source.readCached(); return null; });
+                    }
+                    for (Future<Void> future : executor.invokeAll(tasks)) future.get();
+                    publishHosts(context, sources);  //old list stays active until the new one is complete
+                    Log.w("browser", "AdBlock hosts updated");
+                } else {
+                    loadHosts(context);  //lists unchanged, only rebuilds if the custom hosts changed
+                    Log.w("browser", "AdBlock hosts not modified");
+                }
+            } catch (IOException | InterruptedException | ExecutionException i) {
                 Log.w("browser", "Error updating AdBlock hosts", i);
+                failed = true;
+            } finally {
+                executor.shutdown();
+            }
+
+            if (failed) {
                 ((Activity) context).runOnUiThread(() -> {
                     Toast.makeText(context, "Error updating AdBlock hosts", Toast.LENGTH_LONG).show();
                 });
@@ -170,6 +343,19 @@ public class AdBlock {
         thread.start();
     }
 
+    private static void deleteUnusedLists(Context context, List<BlockListSource> sources) {
+        File[] files = context.getDir("filesdir", Context.MODE_PRIVATE).listFiles((dir, name) -> name.startsWith(LIST_PREFIX));
+        if (files == null) return;
+        for (File file : files) {
+            boolean used = false;
+            for (BlockListSource source : sources) used |= source.file.getName().equals(file.getName());
+            if (!used) {
+                file.delete();
+                BrowserUnit.clearListValidators(context, file);
+            }
+        }
+    }
+
     public static String getDomain(String url) throws URISyntaxException {
         String domain = null;
         url = url.toLowerCase(locale);
@@ -199,30 +385,31 @@ public class AdBlock {
             try {
                 AssetManager manager = context.getAssets();
                 copyFile(manager.open(FILE), Files.newOutputStream(file.toPath()));
+                BrowserUnit.clearListValidators(context, file);
                 downloadHosts(context);  //try to update hosts.txt from internet
             } catch(IOException e) {
                 Log.e("browser", "Failed to copy asset file", e);
             }
         } else {
-            Calendar time = Calendar.getInstance();
-
-            if (BrowserUnit.isUnmeteredConnection(context))
-                time.add(Calendar.DAY_OF_YEAR,-3);
-            else
-                time.add(Calendar.DAY_OF_YEAR,-7);
-
-            Date lastModified = new Date(file.lastModified());
-            if (lastModified.before(time.getTime())||getHostsDate(context).equals("")) {  //also download again if something is wrong with the file
-                //update if file is older than 7 days
+            if (BrowserUnit.isListUpdateDue(context, file)||getHostsDate(context).equals("")||isListMissing(context)) {  //also download again if something is wrong with the file
+                //check for updates if last check is older than 3 or 7 days
                 downloadHosts(context);
             }
         }
 
-        if (hosts.isEmpty()) {
+        if (hosts[BlockListSource.BLOCK].isEmpty() && !loading.getAndSet(true)) {
             loadHosts(context);
         }
     }
 
+    //a subscription without cached rules, e.g. newly added or cached in an older LIST_VERSION
+    private static boolean isListMissing(Context context) {
+        for (BlockListSource source : getSources(context)) {
+            if (!source.file.exists()) return true;
+        }
+        return false;
+    }
+
     private void copyFile(InputStream in, OutputStream out) throws IOException {
         byte[] buffer = new byte[1024];
         int read;
@@ -231,46 +418,42 @@ public class AdBlock {
         }
     }
 
-    boolean isAd(String url) {
-        String domain;
-        try {
-            domain = getDomain(url);
-        } catch (URISyntaxException u) {
-            return false;
-        }
-        if (domain.equals("")) return false;
-
-        boolean domainInHosts = false;
-
-        String[] testDomains = splitDomain(domain);
-        for (String i : testDomains){
-            if (hosts.contains(i.toLowerCase(locale))) {
-                domainInHosts = true;
-                break;
-            }
+    //fast path for WebView requests: the host is already parsed and repeated hosts cost one cache probe
+    boolean isAd(Uri uri, RequestContext requestContext) {
+        if (requestContext.allowlisted) return false;
+        String scheme = uri.getScheme();
+        if (!"https".equalsIgnoreCase(scheme) && !"http".equalsIgnoreCase(scheme)) return false;
+        String host = uri.getHost();
+        if (host == null || host.isEmpty() || host.charAt(0) == '[') return false;  //no host or IPv6 literal
+
+        LruCache<String, Integer> cache = verdicts;
+        HostTrie[] tries = hosts;
+        Integer flags = cache.get(host);
+        if (flags != null) {
+            verdictHits.increment();
+        } else {
+            verdictMisses.increment();
+            int end = host.length();
+            while (end > 0 && host.charAt(end - 1) == '.') end--;
+            int verdict = 0;
+            if (tries[BlockListSource.EXCEPTION].matches(host, 0, end)) verdict = EXCEPTION;
+            else if (tries[BlockListSource.BLOCK].matches(host, 0, end)) verdict = BLOCKED;
+            else if (tries[BlockListSource.THIRD_PARTY].matches(host, 0, end)) verdict = THIRD_PARTY;
+            flags = verdict;
+            cache.put(host, flags);
         }
-
-        return domainInHosts;
+        if (flags == BLOCKED) return true;
+        if (flags == THIRD_PARTY) return requestContext.isThirdParty(host);
+        return false;
     }
 
-    private static String[] splitDomain(String domain) {
-
-        // Split the domain using the dot as a delimiter
-        String[] segments = domain.split("\\.");
-        // Domain should not be a Top Level domain, so it must have at least 2 segments
-        if (segments.length < 2) return new String[0];
-        // Create an array to store subdomains
-        String[] subdomains = new String[segments.length-1];
-        // Build subdomains from right to left
-        StringBuilder currentSubdomain = new StringBuilder();
-        for (int i = segments.length - 1; i >= 0; i--) {
-            currentSubdomain.insert(0, segments[i]);
-            // Store domain if it contains at least 2 segments (not in first iteration)
-            if (i < segments.length -1) subdomains[i] = currentSubdomain.toString();
-            // Add a dot if it's not the last segment
-            if (i > 0) currentSubdomain.insert(0, ".");
-        }
+    boolean isAd(String url) {
+        long range = HostTrie.hostRange(url);
+        if (range < 0) return false;
+        int start = (int) (range >>> 32);
+        int end = (int) range;
 
-        return subdomains;
+        HostTrie[] tries = hosts;
+        return !tries[BlockListSource.EXCEPTION].matches(url, start, end) && tries[BlockListSource.BLOCK].matches(url, start, end);
     }
 }
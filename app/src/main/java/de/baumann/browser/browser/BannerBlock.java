@@ -34,21 +34,19 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.HttpURLConnection;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Calendar;
-import java.util.Date;
+import java.nio.file.StandardCopyOption;
 
 import de.baumann.browser.unit.BrowserUnit;
 
 @SuppressWarnings("ResultOfMethodCallIgnored")
 public class BannerBlock {
     private static final String FILE = "banners.txt";
-    private static String configString = "";
+    private static volatile String configString = "";
+    private static volatile String pageStartedScript;  //built once per rules update, it is the same for all pages
 
 
     private static void loadHosts(final Context context) {
@@ -59,6 +57,7 @@ public class BannerBlock {
             JSONObject jsonData = new JSONObject(jsonDataString);
             JSONArray data = jsonData.getJSONArray("data");
             configString = data.toString().replaceAll("\\\\\"", "\\\\\\\\\"");
+            pageStartedScript = createBannerBlockScriptPageStarted(configString);
         } catch (IOException | JSONException i ) {
             Log.w("browser", "Error loading cookie banner rules", i);
             ((Activity) context).runOnUiThread(() -> {
@@ -73,7 +72,6 @@ public class BannerBlock {
             String hostURL = "https://raw.githubusercontent.com/mozilla/cookie-banner-rules-list/main/cookie-banner-rules-list.json";
 
             try {
-                URL url = new URL(hostURL);
                 Log.d("browser","Download Mozilla cookie banner rules");
 
                 SpannableStringBuilder biggerText = new SpannableStringBuilder("\u27f3 " + "cookie-banner-rules-list.json");
@@ -81,33 +79,35 @@ public class BannerBlock {
                 ((Activity) context).runOnUiThread(() -> {
                     Toast.makeText(context, biggerText, Toast.LENGTH_LONG).show();
                 });
-                URLConnection ucon = url.openConnection();
-                ucon.setReadTimeout(5000);
-                ucon.setConnectTimeout(10000);
-
-                InputStream is = ucon.getInputStream();
-                BufferedInputStream inStream = new BufferedInputStream(is, 1024 * 5);
-
                 File bannerFile = new File(context.getDir("filesdir", Context.MODE_PRIVATE) + "/" +FILE);
-
-                if (bannerFile.exists())
-                {
-                    bannerFile.delete();
+                HttpURLConnection ucon = BrowserUnit.openListConnection(context, hostURL, bannerFile);
+                if (ucon.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    ucon.disconnect();
+                    BrowserUnit.setListChecked(context, bannerFile);
+                    if (configString.equals("")) loadHosts(context);
+                    Log.w("browser", "Mozilla cookie banner rules not modified");
+                    return;
                 }
-                bannerFile.createNewFile();
-
-                FileOutputStream outStream = new FileOutputStream(bannerFile);
-                byte[] buff = new byte[5 * 1024];
-
-                int len;
-                while ((len = inStream.read(buff)) != -1)
-                {
-                    outStream.write(buff, 0, len);
+                if (ucon.getResponseCode() != HttpURLConnection.HTTP_OK) throw new IOException("HTTP " + ucon.getResponseCode());
+
+                File tempfile = new File(context.getDir("filesdir", Context.MODE_PRIVATE) + "/" +FILE+".tmp");
+                try {
+                    try (BufferedInputStream inStream = new BufferedInputStream(ucon.getInputStream(), 1024 * 5);
+                         FileOutputStream outStream = new FileOutputStream(tempfile)) {
+                        byte[] buff = new byte[5 * 1024];
+
+                        int len;
+                        while ((len = inStream.read(buff)) != -1)
+                        {
+                            outStream.write(buff, 0, len);
+                        }
+                        outStream.flush();
+                    }
+                    Files.move(tempfile.toPath(), bannerFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    tempfile.delete();  //only still there if the download or the move failed
                 }
-
-                outStream.flush();
-                outStream.close();
-                inStream.close();
+                BrowserUnit.saveListValidators(context, hostURL, bannerFile, ucon);
 
                 loadHosts(context);  //reload hosts after update
                 Log.w("browser", "Mozilla cookie banner rules updated");
@@ -127,16 +127,8 @@ public class BannerBlock {
         if (!file.exists()) {
             downloadBanners(context);
         } else {
-            Calendar time = Calendar.getInstance();
-
-            if (BrowserUnit.isUnmeteredConnection(context))
-                time.add(Calendar.DAY_OF_YEAR,-3);
-            else
-                time.add(Calendar.DAY_OF_YEAR,-7);
-
-            Date lastModified = new Date(file.lastModified());
-            if (lastModified.before(time.getTime())) {  //also download again if something is wrong with the file
-                //update if file is older than 7 days and Feature switched on
+            if (BrowserUnit.isListUpdateDue(context, file)) {
+                //check for updates if last check is older than 3 or 7 days and Feature switched on
                 SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
                 if (sp.getBoolean("sp_deny_cookie_banners",false)) downloadBanners(context);
             }
@@ -145,6 +137,10 @@ public class BannerBlock {
     }
 
     public static String getBannerBlockScriptPageStarted() {
+        return pageStartedScript;
+    }
+
+    private static String createBannerBlockScriptPageStarted(String configString) {
         if (configString.equals("")) return null;
         else {
             String bannerBlockScript =
@@ -0,0 +1,237 @@
+package de.baumann.browser.browser;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import androidx.preference.PreferenceManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import de.baumann.browser.unit.BrowserUnit;
+
+/**
+ * One block list subscription. Understands hosts files, plain domain lists and AdGuard/ABP style
+ * "||domain^" rules including "$third-party" and "@@" exceptions, element hiding rules are collected
+ * for CosmeticFilter. The main StevenBlack list is
+ * cached as hosts.txt in its original form, other sources are cached as normalized rules.
+ */
+@SuppressWarnings("ResultOfMethodCallIgnored")
+final class BlockListSource {
+
+    static final int BLOCK = 0;
+    static final int THIRD_PARTY = 1;  //block only when requested by another site
+    static final int EXCEPTION = 2;    //never block requests to this host
+    static final int DOCUMENT = 3;     //do not block anything on pages of this host
+    static final int TYPES = 4;
+
+    final String url;
+    final File file;
+    final boolean main;
+
+    HostTrie.Builder[] builders;  //parsed entries per rule type, null until fetched or read from cache
+    List<String> cosmetic;        //element hiding rules, passed on to CosmeticFilter
+    String date = "";
+    int count;
+    long millis;
+    boolean changed;
+
+    BlockListSource(String url, File file, boolean main) {
+        this.url = url;
+        this.file = file;
+        this.main = main;
+    }
+
+    //conditional download, entries are parsed while the data arrives
+    void fetch(Context context) throws IOException {
+        fetch(PreferenceManager.getDefaultSharedPreferences(context));
+    }
+
+    void fetch(SharedPreferences sp) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        HttpURLConnection ucon = BrowserUnit.openListConnection(sp, url, file);
+        if (ucon.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            ucon.disconnect();
+            BrowserUnit.setListChecked(sp, file);
+            changed = false;
+            return;
+        }
+        if (ucon.getResponseCode() != HttpURLConnection.HTTP_OK) throw new IOException("HTTP " + ucon.getResponseCode() + " " + url);
+
+        File tempfile = new File(file.getPath() + ".tmp");
+        HostTrie.Builder[] builders = newBuilders();
+        List<String> cosmetic = new ArrayList<>();
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(ucon.getInputStream(), StandardCharsets.UTF_8), 16 * 1024);
+             BufferedWriter out = new BufferedWriter(new FileWriter(tempfile))) {
+            String line;
+            boolean foundStart = false;
+            while ((line = reader.readLine()) != null) {
+                Rule rule;
+                if (main) {
+                    //keep StevenBlack header comments, remove leading 0.0.0.0
+                    if (line.startsWith("# Start StevenBlack")) foundStart = true;
+                    if (line.startsWith("0.0.0.0 ")) line = line.substring(8);
+                    if (!foundStart && !line.startsWith("#")) continue;
+                    out.write(line);
+                    out.write('\n');
+                    if (date.isEmpty() && line.contains("Date:")) date = "hosts.txt " + line.substring(2);
+                    rule = parseLine(line);
+                } else {
+                    line = line.trim();
+                    if (CosmeticFilter.isCosmetic(line)) {
+                        cosmetic.add(line);
+                        out.write(line);
+                        out.write('\n');
+                        continue;
+                    }
+                    rule = parseLine(line);
+                    if (rule == null) continue;
+                    out.write(rule.toString());
+                    out.write('\n');
+                }
+                if (rule != null) {
+                    builders[rule.type].add(rule.host);
+                    count++;
+                }
+            }
+        } catch (IOException i) {
+            tempfile.delete();
+            throw i;
+        }
+        Files.move(tempfile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        BrowserUnit.saveListValidators(sp, url, file, ucon);
+
+        this.builders = builders;
+        this.cosmetic = cosmetic;
+        this.count = count;
+        this.millis = SystemClock.elapsedRealtime() - start;
+        this.changed = true;
+    }
+
+    void readCached() throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        HostTrie.Builder[] builders = newBuilders();
+        List<String> cosmetic = new ArrayList<>();
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (main && date.isEmpty() && line.contains("Date:")) date = "hosts.txt " + line.substring(2);
+                if (!main && CosmeticFilter.isCosmetic(line)) {
+                    cosmetic.add(line);
+                    continue;
+                }
+                Rule rule = parseLine(line);
+                if (rule == null) continue;
+                builders[rule.type].add(rule.host);
+                count++;
+            }
+        }
+        this.builders = builders;
+        this.cosmetic = cosmetic;
+        this.count = count;
+        this.millis = SystemClock.elapsedRealtime() - start;
+    }
+
+    static HostTrie.Builder[] newBuilders() {
+        HostTrie.Builder[] builders = new HostTrie.Builder[TYPES];
+        for (int i = 0; i < TYPES; i++) builders[i] = new HostTrie.Builder();
+        return builders;
+    }
+
+    static final class Rule {
+        final int type;
+        final String host;
+
+        Rule(int type, String host) {
+            this.type = type;
+            this.host = host;
+        }
+
+        //normalized form, parsed again when reading the cache
+        @Override
+        public String toString() {
+            switch (type) {
+                case THIRD_PARTY: return "||" + host + "^$third-party";
+                case EXCEPTION: return "@@||" + host + "^";
+                case DOCUMENT: return "@@||" + host + "^$document";
+                default: return host;
+            }
+        }
+    }
+
+    //returns the rule of a list line or null for comments, unsupported rules and local addresses
+    static Rule parseLine(String line) {
+        line = line.trim();
+        if (line.isEmpty()) return null;
+        char first = line.charAt(0);
+        if (first == '#' || first == '!' || first == '[') return null;  //comments and ABP header
+        if (line.contains("##") || line.contains("#@#") || line.contains("#?#")) return null;  //cosmetic rules
+
+        int type = BLOCK;
+        String host;
+        boolean exception = line.startsWith("@@");
+        if (exception) line = line.substring(2);
+        if (line.startsWith("||")) {
+            int end = 2;
+            while (end < line.length() && line.charAt(end) != '^' && line.charAt(end) != '/' && line.charAt(end) != '$') end++;
+            host = line.substring(2, end);
+            if (end < line.length() && line.charAt(end) == '^') end++;
+            if (end < line.length()) {
+                if (line.charAt(end) != '$') return null;  //path rules can not be matched by host
+                for (String option : line.substring(end + 1).split(",")) {
+                    switch (option) {
+                        case "third-party":
+                        case "3p":
+                            if (exception) return null;
+                            type = THIRD_PARTY;
+                            break;
+                        case "document":
+                        case "doc":
+                            if (!exception) return null;
+                            type = DOCUMENT;
+                            break;
+                        default:
+                            return null;  //resource type and other options would block too much, $important would have to win over @@ exceptions, which host rules can not express
+                    }
+                }
+            }
+            if (exception && type == BLOCK) type = EXCEPTION;
+        } else if (exception) {
+            return null;
+        } else {
+            int comment = line.indexOf('#');
+            if (comment > 0) line = line.substring(0, comment).trim();
+            String[] parts = line.split("\\s+");
+            if (parts.length >= 2 && isAddress(parts[0])) host = parts[1];  //hosts file
+            else if (parts.length == 1) host = parts[0];  //domain list
+            else return null;
+        }
+
+        host = host.toLowerCase(Locale.ROOT);
+        if (host.indexOf('.') <= 0 || host.equals("localhost.localdomain")) return null;
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '.' || c == '-' || c == '_')) return null;
+        }
+        return new Rule(type, host);
+    }
+
+    private static boolean isAddress(String s) {
+        return s.equals("0.0.0.0") || s.equals("127.0.0.1") || s.equals("::") || s.equals("::1");
+    }
+}
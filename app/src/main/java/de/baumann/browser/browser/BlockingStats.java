@@ -0,0 +1,44 @@
+package de.baumann.browser.browser;
+
+import android.content.Context;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import de.baumann.browser.R;
+
+/**
+ * Lock-free counters of NinjaWebViewClient.shouldInterceptRequest, one instance per tab and a global one.
+ * They are updated on WebView IO threads and only summed up when shown.
+ */
+public class BlockingStats {
+
+    public static final BlockingStats GLOBAL = new BlockingStats();
+
+    private final LongAdder seen = new LongAdder();
+    private final LongAdder blockedAds = new LongAdder();
+    private final LongAdder blockedVideos = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    void record(long startNanos, boolean ad, boolean video) {
+        long time = System.nanoTime() - startNanos;
+        add(this, time, ad, video);
+        add(GLOBAL, time, ad, video);
+    }
+
+    private static void add(BlockingStats stats, long time, boolean ad, boolean video) {
+        stats.seen.increment();
+        stats.nanos.add(time);
+        if (ad) stats.blockedAds.increment();
+        if (video) stats.blockedVideos.increment();
+    }
+
+    public String getSummary(Context context) {
+        return context.getString(R.string.blocking_stats, blockedAds.sum(), blockedVideos.sum(), seen.sum(), nanos.sum() / 1e6);
+    }
+
+    public static String getGlobalSummary(Context context) {
+        long hits = AdBlock.getVerdictCacheHits();
+        long lookups = hits + AdBlock.getVerdictCacheMisses();
+        return GLOBAL.getSummary(context) + "\n" + context.getString(R.string.blocking_stats_cache, lookups == 0 ? 0 : 100 * hits / lookups);
+    }
+}
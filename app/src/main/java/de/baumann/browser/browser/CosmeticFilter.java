@@ -0,0 +1,176 @@
+package de.baumann.browser.browser;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.preference.PreferenceManager;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+
+/**
+ * Element hiding rules ("example.com##.ad", "example.com#@#.ad") indexed by domain. The combined
+ * stylesheet of a site is built once, cached and injected with a single evaluateJavascript.
+ * Generic rules without a domain are only taken from the user's own rules, from subscriptions
+ * they would add thousands of selectors to every page.
+ */
+@SuppressWarnings("ResultOfMethodCallIgnored")
+public class CosmeticFilter {
+    private static final String FILE = "cosmetic.txt";  //cosmetic rules of all AdBlock subscriptions
+    private static final int CACHE_SIZE = 64;
+    private static volatile Rules rules = new Rules();
+
+    private static final class Rules {
+        final Map<String, List<String>> hide = new HashMap<>();      //domain -> selectors
+        final Map<String, Set<String>> unhide = new HashMap<>();     //domain -> selectors not to hide
+        final List<String> generic = new ArrayList<>();
+        final LruCache<String, String> scripts = new LruCache<>(CACHE_SIZE);  //host -> script, "" if nothing to hide
+
+        void add(String line, boolean allowGeneric) {
+            line = line.trim();
+            boolean exception = false;
+            int index = line.indexOf("##");
+            if (index < 0) {
+                index = line.indexOf("#@#");
+                exception = true;
+            }
+            if (index < 0) return;
+            String selector = line.substring(index + (exception ? 3 : 2)).trim();
+            if (selector.isEmpty() || selector.startsWith("+js(") || selector.startsWith("^")) return;  //scriptlets and HTML filters are not supported
+            if (selector.indexOf('{') >= 0 || selector.indexOf('}') >= 0) return;
+
+            List<String> domains = new ArrayList<>();
+            List<String> excluded = new ArrayList<>();
+            for (String domain : line.substring(0, index).split(",")) {
+                domain = domain.trim().toLowerCase(Locale.ROOT);
+                if (domain.isEmpty()) continue;
+                if (domain.startsWith("~")) excluded.add(domain.substring(1));
+                else domains.add(domain);
+            }
+
+            if (exception) {
+                for (String domain : domains) unhide.computeIfAbsent(domain, k -> new HashSet<>()).add(selector);
+            } else if (!domains.isEmpty()) {
+                for (String domain : domains) hide.computeIfAbsent(domain, k -> new ArrayList<>()).add(selector);
+            } else if (allowGeneric) {
+                generic.add(selector);
+                for (String domain : excluded) unhide.computeIfAbsent(domain, k -> new HashSet<>()).add(selector);
+            }
+        }
+
+        String getScript(String host) {
+            String script = scripts.get(host);
+            if (script != null) return script;
+
+            Set<String> selectors = new LinkedHashSet<>(generic);
+            Set<String> excluded = new HashSet<>();
+            for (String domain = host; domain != null; domain = parent(domain)) {
+                List<String> list = hide.get(domain);
+                if (list != null) selectors.addAll(list);
+                Set<String> set = unhide.get(domain);
+                if (set != null) excluded.addAll(set);
+            }
+            selectors.removeAll(excluded);
+
+            if (selectors.isEmpty()) {
+                script = "";
+            } else {
+                //one rule per selector, an invalid selector would otherwise drop the whole rule
+                StringBuilder css = new StringBuilder();
+                for (String selector : selectors) css.append(selector).append("{display:none!important}\n");
+                script = "(function(){var add=function(){var s=document.createElement('style');s.textContent=" + JSONObject.quote(css.toString()) + ";" +
+                        "(document.head||document.documentElement).appendChild(s);};" +
+                        "if(document.documentElement)add();else document.addEventListener('DOMContentLoaded',add);})();";
+            }
+            scripts.put(host, script);
+            return script;
+        }
+
+        private static String parent(String domain) {
+            int dot = domain.indexOf('.');
+            return dot < 0 ? null : domain.substring(dot + 1);
+        }
+    }
+
+    //domain specific rules only, lines starting with # are comments in hosts files
+    static boolean isCosmetic(String line) {
+        return !line.startsWith("#") && !line.startsWith("!") && (line.contains("##") || line.contains("#@#"));
+    }
+
+    //returns the script hiding all matching elements of the page or null if there is nothing to hide
+    public static String getScript(String host) {
+        if (host == null || host.isEmpty()) return null;
+        String script = rules.getScript(host.toLowerCase(Locale.ROOT));
+        return script.isEmpty() ? null : script;
+    }
+
+    //subscription rules are stored when AdBlock merges its sources
+    static void update(Context context, List<String> lines) {
+        File file = new File(context.getDir("filesdir", Context.MODE_PRIVATE) + "/" + FILE);
+        File tempfile = new File(file.getPath() + ".tmp");
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(tempfile))) {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } catch (IOException i) {
+            tempfile.delete();
+            Log.w("browser", "Error saving cosmetic rules", i);
+            return;
+        }
+        try {
+            Files.move(tempfile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException i) {
+            Log.w("browser", "Error saving cosmetic rules", i);
+        }
+        build(context, lines);
+    }
+
+    public static void load(final Context context) {
+        Thread thread = new Thread(() -> {
+            File file = new File(context.getDir("filesdir", Context.MODE_PRIVATE) + "/" + FILE);
+            List<String> lines = new ArrayList<>();
+            if (file.exists()) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) lines.add(line);
+                } catch (IOException i) {
+                    Log.w("browser", "Error loading cosmetic rules", i);
+                }
+            }
+            build(context, lines);
+        });
+        thread.start();
+    }
+
+    private static void build(Context context, List<String> lines) {
+        Rules rules = new Rules();
+        for (String line : lines) rules.add(line, false);
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        if (sp.getBoolean("cosmeticRulesSwitch", false)) {
+            Scanner scanner = new Scanner(sp.getString("sp_cosmetic_rules", ""));
+            while (scanner.hasNextLine()) rules.add(scanner.nextLine(), true);
+        }
+        CosmeticFilter.rules = rules;  //swap in the complete rule set at once, with an empty cache
+        Log.d("browser", "Cosmetic rules loaded: " + rules.hide.size() + " domains, " + rules.generic.size() + " generic");
+    }
+}
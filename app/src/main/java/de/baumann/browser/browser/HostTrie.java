@@ -0,0 +1,297 @@
+package de.baumann.browser.browser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Immutable trie of host names, keyed by labels in reverse order (com -> example -> ads).
+ * Nodes are stored breadth first in one flat buffer, so the children of a node are contiguous
+ * and sorted, and a lookup is one walk from the TLD inward without allocating.
+ * The buffer can be written to disk as is and later be memory mapped and queried in place.
+ *
+ * Layout: int nodeCount, int labelBytes, int size,
+ *         int[nodeCount+1] firstChild, int[nodeCount+1] labelStart, long[] terminal bits, byte[] labels
+ */
+final class HostTrie {
+
+    static final HostTrie EMPTY = new Builder().build();
+    private static final int HEADER = 12;
+
+    private final ByteBuffer data;
+    private final IntBuffer firstChild;  // children of node i are firstChild[i] .. firstChild[i+1]-1
+    private final IntBuffer labelStart;  // label of node i is labels[labelStart[i] .. labelStart[i+1]-1]
+    private final LongBuffer terminal;
+    private final ByteBuffer labels;
+    private final int size;
+
+    private HostTrie(ByteBuffer data) {
+        this.data = data;
+        int nodeCount = data.getInt(0);
+        int labelBytes = data.getInt(4);
+        this.size = data.getInt(8);
+        int offset = HEADER;
+        this.firstChild = section(data, offset, (nodeCount + 1) * 4).asIntBuffer();
+        offset += (nodeCount + 1) * 4;
+        this.labelStart = section(data, offset, (nodeCount + 1) * 4).asIntBuffer();
+        offset += (nodeCount + 1) * 4;
+        this.terminal = section(data, offset, terminalWords(nodeCount) * 8).asLongBuffer();
+        offset += terminalWords(nodeCount) * 8;
+        this.labels = section(data, offset, labelBytes);
+    }
+
+    /** Wraps a buffer previously produced by {@link #writeTo}, without copying it. */
+    static HostTrie read(ByteBuffer buffer) throws IOException {
+        ByteBuffer data = buffer.slice();
+        if (data.remaining() < HEADER) throw new IOException("Truncated host trie");
+        int nodeCount = data.getInt(0);
+        int labelBytes = data.getInt(4);
+        if (nodeCount < 1 || labelBytes < 0 || data.remaining() != byteSize(nodeCount, labelBytes)) throw new IOException("Invalid host trie");
+        return new HostTrie(data);
+    }
+
+    void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer out = data.duplicate();
+        out.clear();
+        while (out.hasRemaining()) channel.write(out);
+    }
+
+    int byteSize() {
+        return data.capacity();
+    }
+
+    int checksum() {
+        CRC32 crc = new CRC32();
+        ByteBuffer in = data.duplicate();
+        in.clear();
+        crc.update(in);
+        return (int) crc.getValue();
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the host s[start, end) or one of its parent domains is in the trie.
+     * Top level domains alone (a single label) never match.
+     */
+    boolean matches(CharSequence s, int start, int end) {
+        if (size == 0) return false;
+        int node = 0;
+        int depth = 0;
+        while (end > start) {
+            int dot = end - 1;
+            while (dot >= start && s.charAt(dot) != '.') dot--;
+            node = findChild(node, s, dot + 1, end);
+            if (node < 0) return false;
+            depth++;
+            if (depth > 1 && (terminal.get(node >>> 6) & (1L << node)) != 0) return true;
+            end = dot;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the host within the url without copying it: [view-source:]http(s)://[user@]host[:port][/?#...].
+     * Returns start << 32 | end, without trailing dots, or -1 if there is no host or an IPv6 literal.
+     */
+    static long hostRange(String url) {
+        int start = 0;
+        if (url.regionMatches(true, 0, "view-source:", 0, 12)) start = 12;
+        if (url.regionMatches(true, start, "https://", 0, 8)) start += 8;
+        else if (url.regionMatches(true, start, "http://", 0, 7)) start += 7;
+        else return -1;
+
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') break;
+            if (c == '@') start = end + 1;
+            end++;
+        }
+        for (int i = start; i < end; i++) {
+            if (url.charAt(i) == ':') {
+                end = i;
+                break;
+            }
+        }
+        while (end > start && url.charAt(end - 1) == '.') end--;
+        if (end == start || url.charAt(start) == '[') return -1;
+        return (long) start << 32 | end;
+    }
+
+    private int findChild(int node, CharSequence s, int start, int end) {
+        int lo = firstChild.get(node);
+        int hi = firstChild.get(node + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareLabel(mid, s, start, end);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private int compareLabel(int node, CharSequence s, int start, int end) {
+        int from = labelStart.get(node);
+        int len = labelStart.get(node + 1) - from;
+        int otherLen = end - start;
+        int n = Math.min(len, otherLen);
+        for (int k = 0; k < n; k++) {
+            int a = labels.get(from + k) & 0xff;
+            int b = s.charAt(start + k);
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (a != b) return a - b;
+        }
+        return len - otherLen;
+    }
+
+    private static ByteBuffer section(ByteBuffer data, int offset, int length) {
+        ByteBuffer section = data.duplicate();
+        section.limit(offset + length).position(offset);
+        return section.slice();
+    }
+
+    private static int terminalWords(int nodeCount) {
+        return (nodeCount + 63) >>> 6;
+    }
+
+    private static int byteSize(int nodeCount, int labelBytes) {
+        return HEADER + 2 * (nodeCount + 1) * 4 + terminalWords(nodeCount) * 8 + labelBytes;
+    }
+
+    static final class Builder {
+        private final List<String[]> keys = new ArrayList<>();
+
+        /** Adds a host name, ignoring anything that is not a plain ASCII host. */
+        Builder add(String host) {
+            host = host.trim();
+            int start = 0;
+            int end = host.length();
+            while (end > start && host.charAt(end - 1) == '.') end--;
+            if (end == start) return this;
+            for (int i = start; i < end; i++) {
+                char c = host.charAt(i);
+                if (c <= ' ' || c > '~') return this;
+            }
+            String[] reversed = host.substring(start, end).toLowerCase(Locale.ROOT).split("\\.");
+            for (int i = 0, j = reversed.length - 1; i < j; i++, j--) {
+                String tmp = reversed[i];
+                reversed[i] = reversed[j];
+                reversed[j] = tmp;
+            }
+            for (String label : reversed) if (label.isEmpty()) return this;
+            keys.add(reversed);
+            return this;
+        }
+
+        Builder addAll(Builder other) {
+            keys.addAll(other.keys);
+            return this;
+        }
+
+        HostTrie build() {
+            String[][] sorted = keys.toArray(new String[0][]);
+            keys.clear();
+            Arrays.sort(sorted, Builder::compareKeys);
+
+            // breadth first: every queue entry is a node covering sorted[lo, hi) at the given depth
+            IntList queue = new IntList();
+            IntList firstChild = new IntList();
+            IntList labelStart = new IntList();
+            ByteList labels = new ByteList();
+            BitSet terminal = new BitSet();
+            int size = 0;
+
+            queue.add(0); queue.add(sorted.length); queue.add(0);
+            labelStart.add(0); labelStart.add(0);  //the root has an empty label
+            int childCount = 1;
+            for (int head = 0, node = 0; head < queue.size(); head += 3, node++) {
+                int lo = queue.get(head);
+                int hi = queue.get(head + 1);
+                int depth = queue.get(head + 2);
+                if (lo < hi && sorted[lo].length == depth) {
+                    terminal.set(node);
+                    size++;
+                    while (lo < hi && sorted[lo].length == depth) lo++;  // duplicates
+                }
+                firstChild.add(childCount);
+                while (lo < hi) {
+                    String label = sorted[lo][depth];
+                    int groupEnd = lo + 1;
+                    while (groupEnd < hi && sorted[groupEnd][depth].equals(label)) groupEnd++;
+                    queue.add(lo); queue.add(groupEnd); queue.add(depth + 1);
+                    labels.add(label.getBytes(StandardCharsets.US_ASCII));
+                    labelStart.add(labels.size());
+                    childCount++;
+                    lo = groupEnd;
+                }
+            }
+            firstChild.add(childCount);
+
+            int nodeCount = childCount;
+            ByteBuffer data = ByteBuffer.allocate(byteSize(nodeCount, labels.size()));
+            data.putInt(nodeCount).putInt(labels.size()).putInt(size);
+            for (int i = 0; i <= nodeCount; i++) data.putInt(firstChild.get(i));
+            for (int i = 0; i <= nodeCount; i++) data.putInt(labelStart.get(i));
+            long[] words = terminal.toLongArray();
+            for (int i = 0; i < terminalWords(nodeCount); i++) data.putLong(i < words.length ? words[i] : 0L);
+            data.put(labels.toArray());
+            data.clear();
+            return new HostTrie(data);
+        }
+
+        private static int compareKeys(String[] a, String[] b) {
+            int n = Math.min(a.length, b.length);
+            for (int i = 0; i < n; i++) {
+                int cmp = a[i].compareTo(b[i]);
+                if (cmp != 0) return cmp;
+            }
+            return a.length - b.length;
+        }
+    }
+
+    private static final class IntList {
+        private int[] data = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+
+        int get(int index) { return data[index]; }
+
+        int size() { return size; }
+    }
+
+    private static final class ByteList {
+        private byte[] data = new byte[4096];
+        private int size;
+
+        void add(byte[] bytes) {
+            while (size + bytes.length > data.length) data = Arrays.copyOf(data, data.length * 2);
+            System.arraycopy(bytes, 0, data, size, bytes.length);
+            size += bytes.length;
+        }
+
+        int size() { return size; }
+
+        byte[] toArray() { return Arrays.copyOf(data, size); }
+    }
+}
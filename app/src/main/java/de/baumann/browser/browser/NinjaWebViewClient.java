@@ -16,6 +16,9 @@ import android.os.Message;
 import androidx.appcompat.app.AlertDialog;
 import androidx.preference.PreferenceManager;
 import androidx.annotation.NonNull;
+import androidx.webkit.ScriptHandler;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
@@ -35,7 +38,9 @@ import android.widget.TextView;
 import java.io.ByteArrayInputStream;
 import java.net.URISyntaxException;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 
 import de.baumann.browser.R;
@@ -52,19 +57,33 @@ public class NinjaWebViewClient extends WebViewClient {
     private final SharedPreferences sp;
     private final AdBlock adBlock;
 
-    private final boolean white;
+    private volatile RequestContext requestContext;  //read on WebView IO threads
+    private final BlockingStats stats = new BlockingStats();
     private boolean enable;
+    private ScriptHandler documentStartScript;  //registered page start bundle
+    private String documentStartBundle;         //script of documentStartScript
+    private String pageStartBundle;             //cached result of getPageStartBundle
+    private int pageStartKey;
+    private String pageStartBanner;
     public void enableAdBlock(boolean enable) {
         this.enable = enable;
     }
 
+    public void setRequestContext(RequestContext requestContext) {
+        this.requestContext = requestContext;
+    }
+
+    public BlockingStats getBlockingStats() {
+        return stats;
+    }
+
     public NinjaWebViewClient(NinjaWebView ninjaWebView) {
         super();
         this.ninjaWebView = ninjaWebView;
         this.context = ninjaWebView.getContext();
         this.sp = PreferenceManager.getDefaultSharedPreferences(context);
         this.adBlock = new AdBlock(this.context);
-        this.white = false;
+        this.requestContext = RequestContext.NONE;
         this.enable = true;
     }
 
@@ -116,21 +135,101 @@ public class NinjaWebViewClient extends WebViewClient {
             view.evaluateJavascript(script.getScript(),null);
         }
 
-        if (sp.getBoolean("sp_deny_cookie_banners",false)){  //inject cookies if possible
-            String bannerBlockScript = BannerBlock.getBannerBlockScriptPageStarted();
-            if (bannerBlockScript != null) view.evaluateJavascript(bannerBlockScript,null);
+        //fingerprint protection, privacy signals and cookie banner rules do not depend on the page, they are registered to run before
+        //the scripts of every new document. Without DOCUMENT_START_SCRIPT support, or until the changed bundle is
+        //registered, they are added to the one script evaluated here.
+        StringBuilder script = new StringBuilder();
+        String bundle = getPageStartBundle();
+        if (!bundle.equals(documentStartBundle)) {
+            script.append(bundle);
+            updateDocumentStartScript(view);
+        }
+        if (enable && !requestContext.allowlisted) {  //hide elements with one combined stylesheet per site
+            String cosmeticScript = CosmeticFilter.getScript(Uri.parse(url).getHost());
+            if (cosmeticScript != null) append(script, cosmeticScript);
         }
+        if (script.length() > 0) view.evaluateJavascript(script.toString(), null);
+    }
 
-        if(ninjaWebView.isFingerPrintProtection()) {
+    //registers the current bundle as document start script, the previous one is removed
+    public void updateDocumentStartScript(WebView view) {
+        if (!WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) return;
+        String bundle = getPageStartBundle();
+        if (bundle.equals(documentStartBundle)) return;
+        if (documentStartScript != null) documentStartScript.remove();
+        documentStartScript = bundle.isEmpty() ? null : WebViewCompat.addDocumentStartJavaScript(view, bundle, Collections.singleton("*"));
+        documentStartBundle = bundle;
+    }
+
+    //each script in its own function, so its declarations do not collide and an exception does not stop the others
+    private static void append(StringBuilder bundle, String script) {
+        bundle.append("(function(){try{\n").append(script).append("\n}catch(e){console.error(e);}})();\n");
+    }
+
+    //removes ping attributes of links and sets the desktop viewport, also on elements the page adds or changes later
+    private static String getObserverScript(boolean ping, boolean viewport) {
+        return "var ping=" + ping + ",viewport=" + viewport + ";" +
+                "var fix=function(node,deep){" +
+                "if(ping){if(node.matches('a[ping]'))node.removeAttribute('ping');if(deep)node.querySelectorAll('a[ping]').forEach(function(a){a.removeAttribute('ping');});}" +
+                "if(viewport){var metas=node.matches('meta[name=\"viewport\"]')?[node]:deep?node.querySelectorAll('meta[name=\"viewport\"]'):[];" +
+                "for(var i=0;i<metas.length;i++){if(metas[i].getAttribute('content')!=='width=1200px')metas[i].setAttribute('content','width=1200px');}}};" +
+                "new MutationObserver(function(mutations){for(var i=0;i<mutations.length;i++){var m=mutations[i];" +
+                "if(m.type==='attributes'){fix(m.target,false);continue;}" +
+                "for(var j=0;j<m.addedNodes.length;j++){if(m.addedNodes[j].nodeType===1)fix(m.addedNodes[j],true);}}})" +
+                ".observe(document,{childList:true,subtree:true,attributes:true,attributeFilter:['ping','content']});" +
+                "if(document.documentElement)fix(document.documentElement,true);";
+    }
+
+    //built again only when the settings, the desktop viewport or the cookie banner rules have changed
+    private String getPageStartBundle() {
+        boolean fingerprint = ninjaWebView.isFingerPrintProtection();
+        boolean hideMediaDevices = !sp.getBoolean("sp_camera",false) && !sp.getBoolean("sp_microphone",false);
+        String bannerBlockScript = sp.getBoolean("sp_deny_cookie_banners",false) ? BannerBlock.getBannerBlockScriptPageStarted() : null;  //inject cookies if possible
+        boolean desktopViewport = ninjaWebView.getSettings().getUseWideViewPort() && ninjaWebView.getWidth() < 1300;
+        int key = (fingerprint ? 1 : 0) | (hideMediaDevices ? 2 : 0) | (desktopViewport ? 4 : 0);
+        if (pageStartBundle != null && key == pageStartKey && bannerBlockScript == pageStartBanner) return pageStartBundle;
+
+        StringBuilder bundle = new StringBuilder();
+        if (bannerBlockScript != null) append(bundle, bannerBlockScript);
+
+        //do not allow ping on http only pages (tested with http://tests.caniuse.com)
+        if (fingerprint || desktopViewport) append(bundle, getObserverScript(fingerprint, desktopViewport));
+
+        //  Client-side detection for GlobalPrivacyControl
+        append(bundle, "if (navigator.globalPrivacyControl === undefined) { Object.defineProperty(navigator, 'globalPrivacyControl', { value: true, writable: false,configurable: false});} else {try { navigator.globalPrivacyControl = true;} catch (e) { console.error('globalPrivacyControl is not writable: ', e); }};");
+        //  Script taken from:
+        //
+        //  donotsell.js
+        //  DuckDuckGo
+        //
+        //  Copyright © 2020 DuckDuckGo. All rights reserved.
+        //
+        //  Licensed under the Apache License, Version 2.0 (the "License");
+        //  you may not use this file except in compliance with the License.
+        //  You may obtain a copy of the License at
+        //
+        //  http://www.apache.org/licenses/LICENSE-2.0
+        //
+        //  Unless required by applicable law or agreed to in writing, software
+        //  distributed under the License is distributed on an "AS IS" BASIS,
+        //  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        //  See the License for the specific language governing permissions and
+        //  limitations under the License.
+        //
+        append(bundle, "if (navigator.doNotTrack === null) { Object.defineProperty(navigator, 'doNotTrack', { value: 1, writable: false,configurable: false});} else {try { navigator.doNotTrack = 1;} catch (e) { console.error('doNotTrack is not writable: ', e); }};");
+        append(bundle, "if (window.doNotTrack === undefined) { Object.defineProperty(window, 'doNotTrack', { value: 1, writable: false,configurable: false});} else {try { window.doNotTrack = 1;} catch (e) { console.error('doNotTrack is not writable: ', e); }};");
+        append(bundle, "if (navigator.msDoNotTrack === undefined) { Object.defineProperty(navigator, 'msDoNotTrack', { value: 1, writable: false,configurable: false});} else {try { navigator.msDoNotTrack = 1;} catch (e) { console.error('msDoNotTrack is not writable: ', e); }};");
+
+        if (fingerprint) {
 
             //Block WebRTC requests which can reveal local IP address
             //Tested with https://diafygi.github.io/webrtc-ips/
-            view.evaluateJavascript("['createOffer', 'createAnswer','setLocalDescription', 'setRemoteDescription'].forEach(function(method) {\n" +
+            append(bundle, "['createOffer', 'createAnswer','setLocalDescription', 'setRemoteDescription'].forEach(function(method) {\n" +
                     "    webkitRTCPeerConnection.prototype[method] = function() {\n" +
                     "      console.log('webRTC snoop');\n" +
                     "      return null;\n" +
                     "    };\n" +
-                    "  });",null);
+                    "  });");
 
             //Prevent canvas fingerprinting by randomizing
             //can be tested e.g. at https://webbrowsertools.com
@@ -139,7 +238,7 @@ public class NinjaWebViewClient extends WebViewClient {
             //The source code has been published originally under Mozilla Public License V2.0. You can obtain a copy of the license at https://mozilla.org/MPL/2.0/
             //The author has given explicit written permission to use his code under GPL V3 in this project.
 
-            view.evaluateJavascript("\n" +
+            append(bundle, "\n" +
                     "  const toBlob = HTMLCanvasElement.prototype.toBlob;\n" +
                     "  const toDataURL = HTMLCanvasElement.prototype.toDataURL;\n" +
                     "  const getImageData = CanvasRenderingContext2D.prototype.getImageData;\n" +
@@ -192,7 +291,7 @@ public class NinjaWebViewClient extends WebViewClient {
                     "      noisify(this.canvas, this);\n" +
                     "      return getImageData.apply(this, arguments);\n" +
                     "    }\n" +
-                    "  });", null);
+                    "  });");
 
             //Prevent WebGL fingerprinting by randomizing
             //can be tested e.g. at https://webbrowsertools.com
@@ -201,7 +300,7 @@ public class NinjaWebViewClient extends WebViewClient {
             //The source code has been published originally under Mozilla Public License V2.0. You can obtain a copy of the license at https://mozilla.org/MPL/2.0/
             //The author has given explicit written permission to use his code under GPL V3 in this project.
 
-            view.evaluateJavascript("\n" +
+            append(bundle, "\n" +
                     "  var glconfig = {\n" +
                     "    \"random\": {\n" +
                     "      \"value\": function () {\n" +
@@ -300,7 +399,7 @@ public class NinjaWebViewClient extends WebViewClient {
                     "  glconfig.spoof.webgl.buffer(WebGLRenderingContext);\n" +
                     "  glconfig.spoof.webgl.buffer(WebGL2RenderingContext);\n" +
                     "  glconfig.spoof.webgl.parameter(WebGLRenderingContext);\n" +
-                    "  glconfig.spoof.webgl.parameter(WebGL2RenderingContext);", null);
+                    "  glconfig.spoof.webgl.parameter(WebGL2RenderingContext);");
 
             //Prevent AudioContext fingerprinting by randomizing
             //can be tested e.g. at https://webbrowsertools.com
@@ -309,7 +408,7 @@ public class NinjaWebViewClient extends WebViewClient {
             //The source code has been published originally under Mozilla Public License V2.0. You can obtain a copy of the license at https://mozilla.org/MPL/2.0/
             //The author has given explicit written permission to use his code under GPL V3 in this project.
 
-            view.evaluateJavascript("\n" +
+            append(bundle, "\n" +
                     "    const acontext = {\n" +
                     "    \"BUFFER\": null,\n" +
                     "    \"getChannelData\": function (e) {\n" +
@@ -356,7 +455,7 @@ public class NinjaWebViewClient extends WebViewClient {
                     "  acontext.getChannelData(AudioBuffer);\n" +
                     "  acontext.createAnalyser(AudioContext);\n" +
                     "  acontext.getChannelData(OfflineAudioContext);\n" +
-                    "  acontext.createAnalyser(OfflineAudioContext);  ", null);
+                    "  acontext.createAnalyser(OfflineAudioContext);  ");
 
             //Prevent Font fingerprinting by randomizing
             //can be tested e.g. at https://webbrowsertools.com
@@ -365,7 +464,7 @@ public class NinjaWebViewClient extends WebViewClient {
             //The source code has been published originally under Mozilla Public License V2.0. You can obtain a copy of the license at https://mozilla.org/MPL/2.0/
             //The author has given explicit written permission to use his code under GPL V3 in this project.
 
-            view.evaluateJavascript("\n" +
+            append(bundle, "\n" +
                     "  var rand = {\n" +
                     "    \"noise\": function () {\n" +
                     "      var SIGN = Math.random() < Math.random() ? -1 : 1;\n" +
@@ -404,11 +503,11 @@ public class NinjaWebViewClient extends WebViewClient {
                     "      //\n" +
                     "      return result;\n" +
                     "    }\n" +
-                    "  });", null);
+                    "  });");
 
             //Spoof screen resolution, color depth: set values like in Tor browser, random values for device memory, hardwareConcurrency, remove battery, network connection, keyboard, media devices info, prevent sendBeacon
 
-            view.evaluateJavascript("" +
+            append(bundle, "" +
                     "Object.defineProperty(window, 'devicePixelRatio',{value:1});" +
                     "Object.defineProperty(window.screen, 'width',{value:1000});" +
                     "Object.defineProperty(window.screen, 'availWidth',{value:1000});" +
@@ -424,49 +523,19 @@ public class NinjaWebViewClient extends WebViewClient {
                     "const hw=Math.pow(2,Math.floor(Math.random() * 4));Object.defineProperty(navigator, 'hardwareConcurrency',{value:hw});" +
                     "Object.defineProperty(navigator, 'connection',{value:null});" +
                     "Object.defineProperty(navigator, 'keyboard',{value:null});" +
-                    "Object.defineProperty(navigator, 'sendBeacon',{value:null});", null);
+                    "Object.defineProperty(navigator, 'sendBeacon',{value:null});");
 
-            if (!sp.getBoolean("sp_camera",false) && !sp.getBoolean("sp_microphone",false)) {
-                view.evaluateJavascript("" +
-                        "Object.defineProperty(navigator, 'mediaDevices',{value:null});", null);
+            if (hideMediaDevices) {
+                append(bundle, "" +
+                        "Object.defineProperty(navigator, 'mediaDevices',{value:null});");
             }
         }
+        pageStartBundle = bundle.toString();
+        pageStartKey = key;
+        pageStartBanner = bannerBlockScript;
+        return pageStartBundle;
     }
 
-    @Override
-    public void onLoadResource(WebView view, String url) {
-
-        if(ninjaWebView.isFingerPrintProtection()) {
-            view.evaluateJavascript("var pingtest=document.querySelector(\"a[ping]\"); if(pingtest!==null){pingtest.removeAttribute('ping')};", null);
-            //do not allow ping on http only pages (tested with http://tests.caniuse.com)
-        }
-
-        if (view.getSettings().getUseWideViewPort() && (view.getWidth()<1300)) view.evaluateJavascript("document.querySelector('meta[name=\"viewport\"]').setAttribute('content', 'width=1200px');", null);
-        //  Client-side detection for GlobalPrivacyControl
-        view.evaluateJavascript("if (navigator.globalPrivacyControl === undefined) { Object.defineProperty(navigator, 'globalPrivacyControl', { value: true, writable: false,configurable: false});} else {try { navigator.globalPrivacyControl = true;} catch (e) { console.error('globalPrivacyControl is not writable: ', e); }};",null);
-        //  Script taken from:
-        //
-        //  donotsell.js
-        //  DuckDuckGo
-        //
-        //  Copyright © 2020 DuckDuckGo. All rights reserved.
-        //
-        //  Licensed under the Apache License, Version 2.0 (the "License");
-        //  you may not use this file except in compliance with the License.
-        //  You may obtain a copy of the License at
-        //
-        //  http://www.apache.org/licenses/LICENSE-2.0
-        //
-        //  Unless required by applicable law or agreed to in writing, software
-        //  distributed under the License is distributed on an "AS IS" BASIS,
-        //  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-        //  See the License for the specific language governing permissions and
-        //  limitations under the License.
-        //
-        view.evaluateJavascript("if (navigator.doNotTrack === null) { Object.defineProperty(navigator, 'doNotTrack', { value: 1, writable: false,configurable: false});} else {try { navigator.doNotTrack = 1;} catch (e) { console.error('doNotTrack is not writable: ', e); }};",null);
-        view.evaluateJavascript("if (window.doNotTrack === undefined) { Object.defineProperty(window, 'doNotTrack', { value: 1, writable: false,configurable: false});} else {try { window.doNotTrack = 1;} catch (e) { console.error('doNotTrack is not writable: ', e); }};",null);
-        view.evaluateJavascript("if (navigator.msDoNotTrack === undefined) { Object.defineProperty(navigator, 'msDoNotTrack', { value: 1, writable: false,configurable: false});} else {try { navigator.msDoNotTrack = 1;} catch (e) { console.error('msDoNotTrack is not writable: ', e); }};",null);
-}
 /*
     @Override
     public boolean shouldOverrideUrlLoading(WebView view, String url) {  //do not delete, needed for camera, for whatever reason
@@ -525,19 +594,15 @@ public class NinjaWebViewClient extends WebViewClient {
         }
     }
 
-    /*
+    //also called by the default implementation of the other overload, e.g. for the invidious redirect
     @Override
     @SuppressWarnings("deprecation")
     public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
-        if (enable && !white && adBlock.isAd(url)) {
-            return new WebResourceResponse(
-                    BrowserUnit.MIME_TYPE_TEXT_PLAIN,
-                    BrowserUnit.URL_ENCODING,
-                    new ByteArrayInputStream("".getBytes())
-            );
-        }
-        return super.shouldInterceptRequest(view, url);
-    }*/
+        long start = System.nanoTime();
+        WebResourceResponse response = intercept(Uri.parse(url), start);
+        if (response == null) stats.record(start, false, false);
+        return response;
+    }
 
     @Override
     public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
@@ -549,36 +614,57 @@ public class NinjaWebViewClient extends WebViewClient {
             }
         });*/
 
+        long start = System.nanoTime();
+        Uri uri = request.getUrl();
+        WebResourceResponse response = intercept(uri, start);
+        if (response != null) return response;
+
+        if (BrowserUnit.isYoutubeHost(uri.getHost()) && sp.getBoolean("sp_invidious_redirect", false)) {
+            String redirect = BrowserUnit.youtubeRedirect(String.valueOf(uri), sp.getString("sp_invidious_domain", "yewtu.be"));
+            if (!redirect.equals(String.valueOf(uri))) {
+                CustomWebResourceRequest newRequest = new CustomWebResourceRequest(Uri.parse(redirect), request.getMethod(), request.getRequestHeaders());
+                return super.shouldInterceptRequest(view, newRequest);  //counted by the other overload
+            }
+        }
+
+        stats.record(start, false, false);
+        return null;  //like super, which would pass the url to the other overload and count the request twice
+    }
+
+    //network video and ad blocking of both overloads, blocked requests are counted here
+    private WebResourceResponse intercept(Uri uri, long start) {
         if (ninjaWebView.getBlockNetworkVideo()){
-            String extension = MimeTypeMap.getFileExtensionFromUrl(request.getUrl().toString());
-            String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
-            if (mimeType!= null && mimeType.startsWith("video")) {
-                return new WebResourceResponse(
-                        BrowserUnit.MIME_TYPE_TEXT_PLAIN,
-                        BrowserUnit.URL_ENCODING,
-                        new ByteArrayInputStream("".getBytes())
-                );
+            String extension = getExtension(uri.getPath());
+            if (extension != null) {
+                String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+                if (mimeType!= null && mimeType.startsWith("video")) {
+                    stats.record(start, false, true);
+                    return new WebResourceResponse(
+                            BrowserUnit.MIME_TYPE_TEXT_PLAIN,
+                            BrowserUnit.URL_ENCODING,
+                            new ByteArrayInputStream("".getBytes())
+                    );
+                }
             }
 
         }
 
-        if (enable && !white && adBlock.isAd(request.getUrl().toString())) {
+        if (enable && adBlock.isAd(uri, requestContext)) {
+            stats.record(start, true, false);
             return new WebResourceResponse(
                     BrowserUnit.MIME_TYPE_TEXT_PLAIN,
                     BrowserUnit.URL_ENCODING,
                     new ByteArrayInputStream("".getBytes())
             );
         }
+        return null;
+    }
 
-        if (sp.getBoolean("sp_invidious_redirect", false)) {
-            String redirect = BrowserUnit.youtubeRedirect(String.valueOf(request.getUrl()), sp.getString("sp_invidious_domain", "yewtu.be"));
-            if (!redirect.equals(String.valueOf(request.getUrl()))) {
-                CustomWebResourceRequest newRequest = new CustomWebResourceRequest(Uri.parse(redirect), request.getMethod(), request.getRequestHeaders());
-                return super.shouldInterceptRequest(view, newRequest);
-            }
-        }
-
-        return super.shouldInterceptRequest(view, request);
+    //extension of the last path segment in lower case, null if there is none or no path at all (data:, about:, blob:, javascript:)
+    static String getExtension(String path) {
+        if (path == null) return null;
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') ? path.substring(dot + 1).toLowerCase(Locale.ROOT) : null;
     }
 
     @Override
@@ -0,0 +1,34 @@
+package de.baumann.browser.browser;
+
+/**
+ * The top level page of a tab as seen by shouldInterceptRequest. Created once per navigation
+ * from the domain NinjaWebView already computes, so resources never parse the page url again.
+ */
+public final class RequestContext {
+
+    static final RequestContext NONE = new RequestContext("");
+
+    final String domain;
+    final boolean allowlisted;
+    private final String site;
+
+    public RequestContext(String domain) {
+        this.domain = domain;
+        this.site = getSite(domain);
+        this.allowlisted = !domain.isEmpty() && AdBlock.isAllowlisted(domain);
+    }
+
+    //same rule as the Referer in NinjaWebView.getRequestHeaders, but compared on the site (last two labels)
+    boolean isThirdParty(String host) {
+        if (site.isEmpty()) return false;  //unknown page, do not block on guesses
+        return !getSite(host).equalsIgnoreCase(site);
+    }
+
+    private static String getSite(String host) {
+        int end = host.length();
+        while (end > 0 && host.charAt(end - 1) == '.') end--;
+        int dot = host.lastIndexOf('.', end - 1);
+        if (dot > 0) dot = host.lastIndexOf('.', dot - 1);
+        return host.substring(dot + 1, end);
+    }
+}
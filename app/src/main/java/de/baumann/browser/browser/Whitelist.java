@@ -0,0 +1,207 @@
+package de.baumann.browser.browser;
+
+import android.content.Context;
+import android.os.Looper;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import de.baumann.browser.database.Databases;
+import de.baumann.browser.database.RecordAction;
+import de.baumann.browser.unit.RecordUnit;
+
+/**
+ * Domains of the Javascript, DOM and Cookie whitelists, shared by all instances of those classes.
+ * The site permissions are read once into one index of host -> whitelist flags, so the host of a url
+ * is extracted once and all three lists are answered by walking its parent domains (a.b.example.com,
+ * b.example.com, example.com). Readers on WebView threads only see immutable snapshots, writers replace
+ * the snapshot (copy on write) and update the database in the background.
+ */
+public final class Whitelist {
+
+    //same bits as RecordAction.getPermissions
+    public static final int JAVASCRIPT = 1;
+    public static final int DOM = 2;
+    public static final int COOKIE = 4;
+
+    private static final String[] PERMISSIONS = {RecordUnit.PERMISSION_JAVASCRIPT, RecordUnit.PERMISSION_DOM, RecordUnit.PERMISSION_COOKIE};
+    private static final Whitelist[] lists = new Whitelist[PERMISSIONS.length];
+    private static volatile Map<String, Integer> index = Collections.emptyMap();  //host -> flags of all lists
+    private static volatile boolean loaded;
+    private static final AtomicBoolean loading = new AtomicBoolean();
+    private static Context context;
+
+    static {
+        for (int i = 0; i < PERMISSIONS.length; i++) lists[i] = new Whitelist(PERMISSIONS[i], 1 << i);
+    }
+
+    private final String permission;
+    private final int flag;
+    private Set<String> hosts = Collections.emptySet();
+
+    private Whitelist(String permission, int flag) {
+        this.permission = permission;
+        this.flag = flag;
+    }
+
+    static Whitelist get(Context context, String permission) {
+        requireLoaded(context);
+        for (Whitelist whitelist : lists) {
+            if (whitelist.permission.equals(permission)) return whitelist;
+        }
+        throw new IllegalArgumentException(permission);
+    }
+
+    //reads the whitelists now instead of on first use, not on the main thread
+    public static void preload(Context context) {
+        if (!loaded) load(context);
+    }
+
+    //like RecordAction.findBookmark the main thread never reads the table, there the lists are read in the background
+    //and are empty until then. BrowserActivity waits for the preload before the first page is loaded
+    private static void requireLoaded(Context context) {
+        if (loaded) return;
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            load(context);
+        } else if (loading.compareAndSet(false, true)) {
+            Databases.read(() -> {
+                loading.set(false);
+                load(context);
+                return null;
+            }, null);
+        }
+    }
+
+    private static synchronized void load(Context context) {
+        if (loaded) return;
+        Whitelist.context = context.getApplicationContext();
+        reloadAll();
+        loaded = true;
+    }
+
+    //the database files were replaced, e.g. by restoring a backup
+    public static synchronized void reloadAll() {
+        if (context == null) return;  //not loaded yet
+        RecordAction action = new RecordAction(context);
+        action.open(false);
+        Map<String, Integer> permissions = action.listPermissions();
+        action.close();
+        for (Whitelist whitelist : lists) {
+            Set<String> hosts = new HashSet<>();
+            for (Map.Entry<String, Integer> entry : permissions.entrySet()) {
+                if ((entry.getValue() & whitelist.flag) == 0) continue;
+                String host = normalize(entry.getKey());
+                if (!host.isEmpty()) hosts.add(host);
+            }
+            whitelist.hosts = hosts;
+        }
+        publish();
+    }
+
+    private static void publish() {
+        Map<String, Integer> index = new HashMap<>();
+        for (Whitelist whitelist : lists) {
+            for (String host : whitelist.hosts) index.merge(host, whitelist.flag, (a, b) -> a | b);
+        }
+        Whitelist.index = Collections.unmodifiableMap(index);
+    }
+
+    /** Returns the flags (JAVASCRIPT, DOM, COOKIE) of all whitelists matching the host of the url. */
+    public static int getFlags(Context context, String url) {
+        requireLoaded(context);
+        return getFlags(url);
+    }
+
+    private static int getFlags(String url) {
+        String host = getHost(url);
+        if (host.isEmpty()) return 0;
+        Map<String, Integer> index = Whitelist.index;
+        int flags = 0;
+        for (int start = 0; start >= 0; ) {
+            Integer value = index.get(start == 0 ? host : host.substring(start));
+            if (value != null) flags |= value;
+            int dot = host.indexOf('.', start);
+            start = dot < 0 ? -1 : dot + 1;
+        }
+        return flags;
+    }
+
+    boolean isWhite(String url) {
+        return (getFlags(url) & flag) != 0;
+    }
+
+    void addDomain(String domain) {
+        if (domain == null || domain.trim().isEmpty()) return;
+        write(action -> action.addDomain(domain, permission));
+        synchronized (Whitelist.class) {
+            String host = normalize(domain);
+            if (host.isEmpty()) return;
+            Set<String> hosts = new HashSet<>(this.hosts);
+            hosts.add(host);
+            this.hosts = hosts;
+            publish();
+        }
+    }
+
+    void removeDomain(String domain) {
+        if (domain == null || domain.trim().isEmpty()) return;
+        write(action -> action.deleteDomain(domain, permission));
+        synchronized (Whitelist.class) {
+            Set<String> hosts = new HashSet<>(this.hosts);
+            hosts.remove(normalize(domain));
+            this.hosts = hosts;
+            publish();
+        }
+    }
+
+    void clearDomains() {
+        write(action -> action.clearPermission(permission));
+        synchronized (Whitelist.class) {
+            this.hosts = Collections.emptySet();
+            publish();
+        }
+    }
+
+    //the index is updated at once, the database on the writer thread
+    private static void write(Consumer<RecordAction> update) {
+        Databases.write(() -> {
+            RecordAction action = new RecordAction(context);
+            action.open(true);
+            update.accept(action);
+            action.close();
+        });
+    }
+
+    //entries are domains as stored by HelperUnit.domain, but may also be typed as url
+    static String normalize(String domain) {
+        String host = getHost(domain.trim());
+        if (host.startsWith("*.")) host = host.substring(2);
+        if (host.startsWith("www.")) host = host.substring(4);
+        return host;
+    }
+
+    //host of an url or of a plain domain, lower case and without port and trailing dot
+    static String getHost(String url) {
+        if (url == null) return "";
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#' || c == '\\') break;
+            end++;
+        }
+        int at = url.lastIndexOf('@', end - 1);
+        if (at >= start) start = at + 1;
+        int colon = url.indexOf(':', start);
+        if (colon >= 0 && colon < end) end = colon;
+        while (end > start && url.charAt(end - 1) == '.') end--;
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+}
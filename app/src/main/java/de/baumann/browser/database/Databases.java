@@ -0,0 +1,88 @@
+package de.baumann.browser.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The process wide helpers of browser.db, favicon.db and scripts.db. Their connections stay open and use
+ * write ahead logging, so the database files are only complete after a checkpoint.
+ * Work started from the UI runs on one writer thread and a small pool of readers, which WAL lets
+ * run alongside the writer. Results are delivered on the main thread.
+ */
+public final class Databases {
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private static final ExecutorService readers = Executors.newFixedThreadPool(2);
+    private static final Handler main = new Handler(Looper.getMainLooper());
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private Databases() {}
+
+    public static <T> Future<T> read(Callable<T> query, Callback<T> callback) {
+        return readers.submit(() -> run(query, callback));
+    }
+
+    //writes are executed in the order they are submitted
+    public static Future<?> write(Runnable update) {
+        return writer.submit(() -> {
+            try {
+                update.run();
+            } catch (RuntimeException e) {
+                Log.w("browser", "Database write failed", e);
+            }
+        });
+    }
+
+    public static <T> Future<T> write(Callable<T> update, Callback<T> callback) {
+        return writer.submit(() -> run(update, callback));
+    }
+
+    private static <T> T run(Callable<T> task, Callback<T> callback) {
+        T result;
+        try {
+            result = task.call();
+        } catch (Exception e) {
+            Log.w("browser", "Database access failed", e);
+            return null;
+        }
+        if (callback != null) main.post(() -> callback.onResult(result));
+        return result;
+    }
+
+    private static SQLiteOpenHelper[] getHelpers(Context context) {
+        return new SQLiteOpenHelper[] {RecordHelper.getInstance(context), FaviconHelper.getInstance(context), UserScriptsHelper.getInstance(context)};
+    }
+
+    //writes the WAL into the database files, before they are copied into a backup
+    public static void checkpoint(Context context) {
+        for (SQLiteOpenHelper helper : getHelpers(context)) {
+            try (Cursor cursor = helper.getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+                cursor.moveToFirst();
+            }
+        }
+    }
+
+    //before the database files are replaced, the helpers open them again on next use
+    public static void close(Context context) {
+        Future<?> closed = writer.submit(() -> {  //after all pending writes
+            for (SQLiteOpenHelper helper : getHelpers(context)) helper.close();
+        });
+        try {
+            closed.get();
+        } catch (Exception e) {
+            Log.w("browser", "Error closing databases", e);
+        }
+    }
+}
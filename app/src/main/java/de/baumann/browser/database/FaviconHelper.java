@@ -1,15 +1,17 @@
 package de.baumann.browser.database;
 
-import android.app.Activity;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Build;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.View;
 import android.widget.ImageView;
 
@@ -17,14 +19,19 @@ import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import de.baumann.browser.R;
 
 public class FaviconHelper extends SQLiteOpenHelper {
     // Database Version
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
 
     // Database Name
     private static final String DATABASE_NAME = "favicon.db";
@@ -36,13 +43,43 @@ public class FaviconHelper extends SQLiteOpenHelper {
     private static final String DOMAIN = "domain";
     private static final String IMAGE = "image";
 
-    // create Table statement
+    // create Table statement, one row per lower case domain
     private static final String CREATE_TABLE_FAVICON = "CREATE TABLE " + TABLE_FAVICON + "("+
-            DOMAIN + " TEXT," +
+            DOMAIN + " TEXT PRIMARY KEY NOT NULL," +
             IMAGE + " BLOB);";
 
-    public FaviconHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // favicons are stored with at most this width and height
+    private static final int ICON_SIZE = 64;
+
+    //decoded favicons of the whole process by domain, sized in bytes, MISSING for domains without favicon
+    private static final Bitmap MISSING = Bitmap.createBitmap(1, 1, Bitmap.Config.ALPHA_8);
+    private static final LruCache<String, Bitmap> cache = new LruCache<String, Bitmap>((int) Math.min(Runtime.getRuntime().maxMemory() / 32, 4 * 1024 * 1024)) {
+        @Override
+        protected int sizeOf(String domain, Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
+        }
+    };
+    //views waiting for the favicon of a domain, only touched on the main thread
+    private static final Map<String, List<ImageView>> pending = new HashMap<>();
+
+    private static FaviconHelper instance;
+
+    private FaviconHelper(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    //one helper and connection for the whole process, it stays open until the database file is replaced
+    public static synchronized FaviconHelper getInstance(Context context) {
+        if (instance == null) instance = new FaviconHelper(context);
+        return instance;
+    }
+
+    //the database file is replaced, e.g. by restoring a backup
+    @Override
+    public synchronized void close() {
+        super.close();
+        cache.evictAll();
     }
 
     @Override
@@ -53,43 +90,61 @@ public class FaviconHelper extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_FAVICON);
-        onCreate(db);
+        if (oldVersion == 1) {
+            //rows without key and full size PNGs, the last row of a domain wins as it did on reading
+            db.execSQL("ALTER TABLE " + TABLE_FAVICON + " RENAME TO " + TABLE_FAVICON + "_old");
+            db.execSQL(CREATE_TABLE_FAVICON);
+            try (Cursor cursor = db.rawQuery("SELECT " + DOMAIN + ", " + IMAGE + " FROM " + TABLE_FAVICON + "_old WHERE " + DOMAIN + " IS NOT NULL AND " + IMAGE + " IS NOT NULL ORDER BY rowid", null)) {
+                while (cursor.moveToNext()) {
+                    Bitmap bitmap = getBitmap(cursor.getBlob(1));
+                    String domain = cursor.getString(0).trim().toLowerCase(Locale.ROOT);
+                    if (bitmap == null || domain.isEmpty()) continue;
+                    ContentValues values = new ContentValues();
+                    values.put(DOMAIN, domain);
+                    values.put(IMAGE, convertBytes(scale(bitmap)));
+                    db.insertWithOnConflict(TABLE_FAVICON, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+            }
+            db.execSQL("DROP TABLE " + TABLE_FAVICON + "_old");
+        }
     }
 
     public synchronized void addFavicon( String url, Bitmap bitmap) throws SQLiteException {
         String domain = getDomain(url);
         if (domain == null) return;
         SQLiteDatabase database = this.getWritableDatabase();
-        //first delete existing Favicon for domain if available
-        database.delete(TABLE_FAVICON, DOMAIN + " = ? COLLATE NOCASE", new String[]{domain.trim()});
-
-        if (bitmap == null) return;
-        byte[] byteImage= convertBytes(bitmap);
-        ContentValues values = new  ContentValues();
-        values.put(DOMAIN,     domain.trim());
-        values.put(IMAGE,     byteImage);
-        database.insert(TABLE_FAVICON, null, values );
-        database.close();
+        if (bitmap == null) {
+            database.delete(TABLE_FAVICON, DOMAIN + " = ?", new String[]{domain});
+            cache.put(domain, MISSING);
+            return;
+        }
+        bitmap = scale(bitmap);
+        ContentValues values = new ContentValues();
+        values.put(DOMAIN, domain);
+        values.put(IMAGE, convertBytes(bitmap));
+        database.insertWithOnConflict(TABLE_FAVICON, null, values, SQLiteDatabase.CONFLICT_REPLACE);  //SQLite 3.22 of API 29 has no UPSERT
+        cache.put(domain, bitmap);
     }
 
     public synchronized void deleteFavicon( String domain) throws SQLiteException {
+        domain = domain.trim().toLowerCase(Locale.ROOT);
         SQLiteDatabase database = this.getWritableDatabase();
-        database.delete(TABLE_FAVICON, DOMAIN + " = ? COLLATE NOCASE", new String[]{domain.trim()});
-        database.close();
+        database.delete(TABLE_FAVICON, DOMAIN + " = ?", new String[]{domain});
+        cache.remove(domain);
     }
 
     public synchronized void deleteAllFavicons() throws SQLiteException {
         SQLiteDatabase database = this.getWritableDatabase();
         database.delete(TABLE_FAVICON, null, null);
-        database.close();
+        cache.evictAll();
     }
 
-    public synchronized Bitmap getFavicon(String url){
+    public Bitmap getFavicon(String url){
         if (url==null) return null;
         String domain=getDomain(url);
         if (domain==null) return null;
+        Bitmap cached = cache.get(domain);
+        if (cached != null) return cached == MISSING ? null : cached;
 
         SQLiteDatabase database = this.getReadableDatabase();
 
@@ -100,19 +155,13 @@ public class FaviconHelper extends SQLiteOpenHelper {
                 DOMAIN + " = ?",
                 new String[]{domain}, null, null, null, null);
 
-        byte[] image;
-
-        if (cursor != null && cursor.moveToFirst()){
-            image = cursor.getBlob(1);
-            cursor.close();
-            database.close();
-            return getBitmap(image);
-        }else{
-            database.close();
-            return null;
-        }
+        Bitmap bitmap = null;
+        if (cursor != null && cursor.moveToFirst()) bitmap = getBitmap(cursor.getBlob(1));
+        if (cursor != null) cursor.close();
+        cache.put(domain, bitmap == null ? MISSING : bitmap);
+        return bitmap;
     }
-    public synchronized List<String> getAllFaviconDomains(){
+    public List<String> getAllFaviconDomains(){
         SQLiteDatabase database = this.getReadableDatabase();
         List<String> result = new ArrayList<>();
         Cursor cursor;
@@ -126,11 +175,10 @@ public class FaviconHelper extends SQLiteOpenHelper {
             cursor.moveToNext();
         }
         cursor.close();
-        database.close();
         return result;
     }
 
-    public synchronized int getNumFavicons(){
+    public int getNumFavicons(){
         SQLiteDatabase database = this.getReadableDatabase();
 
         Cursor cursor;
@@ -141,44 +189,78 @@ public class FaviconHelper extends SQLiteOpenHelper {
 
         int result=cursor.getCount();
         cursor.close();
-        database.close();
         return result;
     }
 
-    public void cleanUpFaviconDB(Context context){
-        List<String> faviconURLs=getAllFaviconDomains();
+    //deletes favicons of domains no bookmark uses anymore, in one statement against a temporary table of the bookmark domains
+    public synchronized int cleanUpFaviconDB(Context context) {
         RecordAction action = new RecordAction(context);
-        List<Record> allEntries = action.listEntries((Activity)context);
-
-        for(String faviconURL:faviconURLs){
-            boolean found=false;
-            for(Record entry:allEntries){
-                if(Objects.equals(getDomain(entry.getURL()), faviconURL)){
-                    found=true;
-                    break;
+        action.open(false);
+        List<String> urls = action.listBookmarkUrls();
+        action.close();
+        Set<String> domains = new HashSet<>();
+        for (String url : urls) {
+            String domain = url == null ? null : getDomain(url);
+            if (domain != null) domains.add(domain);
+        }
+
+        SQLiteDatabase database = this.getWritableDatabase();
+        int deleted;
+        database.beginTransaction();
+        try {
+            database.execSQL("CREATE TEMP TABLE IF NOT EXISTS favicon_keep(" + DOMAIN + " TEXT PRIMARY KEY)");
+            database.execSQL("DELETE FROM temp.favicon_keep");
+            try (SQLiteStatement insert = database.compileStatement("INSERT OR IGNORE INTO temp.favicon_keep VALUES (?)")) {
+                for (String domain : domains) {
+                    insert.bindString(1, domain);
+                    insert.executeInsert();
                 }
             }
-            //If there is no entry in StartSite, Bookmarks, or History using this Favicon -> delete it
-            if(!found) {
-                deleteFavicon(faviconURL);
-                Log.d("Favicon delete", faviconURL);
+            try (SQLiteStatement delete = database.compileStatement("DELETE FROM " + TABLE_FAVICON + " WHERE " + DOMAIN + " NOT IN (SELECT " + DOMAIN + " FROM temp.favicon_keep)")) {
+                deleted = delete.executeUpdateDelete();
             }
+            database.execSQL("DROP TABLE temp.favicon_keep");
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
+        if (deleted > 0) {
+            cache.evictAll();
+            Log.d("browser", "Favicons deleted: " + deleted);
+        }
+        return deleted;
+    }
+
+    //cleanup on the writer thread, e.g. when the browser is closed
+    public static void cleanUp(Context context) {
+        Context appContext = context.getApplicationContext();
+        Databases.write(() -> getInstance(appContext).cleanUpFaviconDB(appContext));
     }
 
+    //lossless WebP is smaller and faster to decode than PNG, on API 29 the deprecated WEBP format is lossless at quality 100
+    @SuppressWarnings("deprecation")
     public static byte[] convertBytes(Bitmap bitmap) {
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 0, stream);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSLESS, 100, stream);
+        else bitmap.compress(Bitmap.CompressFormat.WEBP, 100, stream);
         return stream.toByteArray();
     }
 
+    //favicons are shown much smaller than some sites deliver them
+    private static Bitmap scale(Bitmap bitmap) {
+        int size = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (size <= ICON_SIZE) return bitmap;
+        return Bitmap.createScaledBitmap(bitmap, Math.max(1, bitmap.getWidth() * ICON_SIZE / size), Math.max(1, bitmap.getHeight() * ICON_SIZE / size), true);
+    }
+
     public static Bitmap getBitmap(byte[] byteimage) {
         return BitmapFactory.decodeByteArray(byteimage, 0, byteimage.length);
     }
 
     public static String getDomain(String url){
         try {
-            return new URI(url).getHost();
+            String host = new URI(url).getHost();
+            return host == null ? null : host.toLowerCase(Locale.ROOT);
         } catch (URISyntaxException e) {
             e.printStackTrace();
             return null;
@@ -191,12 +273,42 @@ public class FaviconHelper extends SQLiteOpenHelper {
 
     public static void setFavicon(Context context, View view, String url, int id, int idImage) {
         ImageView faviconView = view.findViewById(id);
-        FaviconHelper faviconHelper = new FaviconHelper(context);
-        Bitmap bitmap=faviconHelper.getFavicon(url);
-        if (bitmap != null){
-            faviconView.setImageBitmap(bitmap);
-        }else {
-            faviconView.setImageResource(idImage);
+        loadFavicon(context, faviconView, url, idImage);
+    }
+
+    //shows idImage until the favicon is read, recycled list rows only get the favicon of their current url.
+    //Cached favicons are set at once, rows of the same domain share one read and decode.
+    public static void loadFavicon(Context context, ImageView faviconView, String url, int idImage) {
+        faviconView.setTag(url);
+        String domain = url == null ? null : getDomain(url);
+        Bitmap cached = domain == null ? MISSING : cache.get(domain);
+        if (cached != null) {
+            if (cached == MISSING) faviconView.setImageResource(idImage);
+            else faviconView.setImageBitmap(cached);
+            return;
+        }
+        faviconView.setImageResource(idImage);
+        List<ImageView> views = pending.get(domain);
+        if (views != null) {
+            if (!views.contains(faviconView)) views.add(faviconView);
+            return;
         }
+        views = new ArrayList<>();
+        views.add(faviconView);
+        pending.put(domain, views);
+        FaviconHelper faviconHelper = FaviconHelper.getInstance(context);
+        Databases.read(() -> {
+            try {
+                return faviconHelper.getFavicon(url);
+            } catch (RuntimeException e) {  //the waiting views still have to be released
+                Log.w("browser", "Error reading favicon", e);
+                return null;
+            }
+        }, bitmap -> {
+            for (ImageView view : pending.remove(domain)) {
+                Object tag = view.getTag();
+                if (bitmap != null && tag instanceof String && Objects.equals(domain, getDomain((String) tag))) view.setImageBitmap(bitmap);
+            }
+        });
     }
 }
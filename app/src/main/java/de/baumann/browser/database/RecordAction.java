@@ -1,21 +1,26 @@
 package de.baumann.browser.database;
 
-import android.app.Activity;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Looper;
 
 import androidx.preference.PreferenceManager;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.baumann.browser.unit.RecordUnit;
 
@@ -23,27 +28,46 @@ public class RecordAction {
 
     private SQLiteDatabase database;
     private final RecordHelper helper;
+    private final Context context;
+    private static volatile Map<String, Record> bookmarks;  //URL -> bookmark, null until loaded
+    private static final AtomicLong bookmarksVersion = new AtomicLong();  //counts the changes of the bookmark table
+    private static final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+    private static final String[] BOOKMARK_COLUMNS = {
+            RecordUnit.COLUMN_TITLE,
+            RecordUnit.COLUMN_URL,
+            RecordUnit.COLUMN_TIME,
+            RecordUnit.COLUMN_ICON_COLOR,
+            RecordUnit.COLUMN_DESKTOP_MODE,
+            RecordUnit.COLUMN_JAVASCRIPT,
+            RecordUnit.COLUMN_DOM
+    };
 
     public RecordAction(Context context) {
-        this.helper = new RecordHelper(context);
+        this.context = context.getApplicationContext();
+        this.helper = RecordHelper.getInstance(context);
     }
     public void open(boolean rw) { database = rw ? helper.getWritableDatabase() : helper.getReadableDatabase(); }
     public void close() {
-        helper.close();
+        //nothing to do, the shared connection stays open (see RecordHelper.getInstance)
     }
 
     //BOOKMARK
 
+    private static boolean isValidBookmark (Record record) {
+        return record != null
+                && record.getTitle() != null
+                && !record.getTitle().trim().isEmpty()
+                && record.getURL() != null
+                && !record.getURL().toLowerCase(Locale.getDefault()).trim().isEmpty()
+                && record.getDesktopMode() != null
+                && record.getJavascript() != null
+                && record.getDomStorage() != null
+                && record.getTime() >= 0L;
+    }
+
     public void addBookmark (Record record) {
-        if (record == null
-                || record.getTitle() == null
-                || record.getTitle().trim().isEmpty()
-                || record.getURL() == null
-                || record.getURL().toLowerCase(Locale.getDefault()).trim().isEmpty()
-                || record.getDesktopMode() == null
-                || record.getJavascript() == null
-                || record.getDomStorage() == null
-                || record.getTime() < 0L) {
+        if (!isValidBookmark(record)) {
             return;
         }
 
@@ -56,64 +80,166 @@ public class RecordAction {
         values.put(RecordUnit.COLUMN_JAVASCRIPT,record.getJavascript());
         values.put(RecordUnit.COLUMN_DOM,record.getDomStorage());
 
-        database.insert(RecordUnit.TABLE_BOOKMARK, null, values);
+        database.insertWithOnConflict(RecordUnit.TABLE_BOOKMARK, null, values, SQLiteDatabase.CONFLICT_REPLACE);  //URL is unique
+        String url = values.getAsString(RecordUnit.COLUMN_URL);
+        updateBookmark(url, new Record(values.getAsString(RecordUnit.COLUMN_TITLE), url, values.getAsLong(RecordUnit.COLUMN_TIME),
+                record.getDesktopMode(), record.getJavascript(), record.getDomStorage(), record.getIconColor()));
+    }
+
+    public interface RecordSource {
+        Record next() throws IOException;  //null at the end
+    }
+
+    public interface RecordSink {
+        void accept(Record record) throws IOException;
+    }
+
+    //bulk import in one transaction, bookmarks with an URL already in the table or read before are skipped
+    public int addBookmarks (RecordSource source) throws IOException {
+        Set<String> urls = new HashSet<>();
+        try (Cursor cursor = database.query(RecordUnit.TABLE_BOOKMARK, new String[] {RecordUnit.COLUMN_URL}, null, null, null, null, null)) {
+            while (cursor.moveToNext()) urls.add(cursor.getString(0));
+        }
+        String sql = "INSERT OR IGNORE INTO " + RecordUnit.TABLE_BOOKMARK + " (" + String.join(", ", BOOKMARK_COLUMNS) + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+        int count = 0;
+        database.beginTransaction();
+        try {
+            Record record;
+            while ((record = source.next()) != null) {
+                if (!isValidBookmark(record)) continue;
+                String url = record.getURL().toLowerCase(Locale.getDefault()).trim();
+                if (!urls.add(url)) continue;
+                execute(sql, record.getTitle().trim(), url, record.getTime() > 0 ? record.getTime() : System.currentTimeMillis(), record.getIconColor(),
+                        record.getDesktopMode() ? 1 : 0, record.getJavascript() ? 1 : 0, record.getDomStorage() ? 1 : 0);
+                count++;
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        invalidateBookmarks(context);
+        return count;
+    }
+
+    //bookmarks in the order of listBookmark, read row by row from the cursor
+    public void exportBookmarks (Context context, RecordSink sink) throws IOException {
+        try (Cursor cursor = database.query(RecordUnit.TABLE_BOOKMARK, BOOKMARK_COLUMNS, null, null, null, null, getBookmarkOrder(context))) {
+            while (cursor.moveToNext()) sink.accept(getRecord(cursor));
+        }
+    }
+
+    //point lookup by URL for every navigation, the table is never read for it on the main thread
+    public static Record findBookmark(Context context, String url) {
+        if (url == null) return null;
+        Map<String, Record> map = bookmarks;
+        if (map == null) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                rebuildBookmarks(context);
+                return null;
+            }
+            map = loadBookmarks(context);
+        }
+        return map.get(url);
+    }
+
+    public static void preloadBookmarks(Context context) {
+        if (bookmarks == null) loadBookmarks(context);
+    }
+
+    //not on the main thread. A map read before a later change is not kept, the rebuild after that change replaces it
+    private static Map<String, Record> loadBookmarks(Context context) {
+        long version = bookmarksVersion.get();
+        Map<String, Record> map = new HashMap<>();
+        RecordAction action = new RecordAction(context);
+        action.open(false);
+        try (Cursor cursor = action.database.query(RecordUnit.TABLE_BOOKMARK, BOOKMARK_COLUMNS, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                Record record = action.getRecord(cursor);
+                map.put(record.getURL(), record);
+            }
+        }
+        action.close();
+        synchronized (RecordAction.class) {
+            if (version == bookmarksVersion.get()) bookmarks = map;
+        }
+        return map;
+    }
+
+    //also needed if the database file was replaced, the previous map is used until the new one is read
+    public static void invalidateBookmarks(Context context) {
+        bookmarksVersion.incrementAndGet();
+        rebuildBookmarks(context);
+    }
+
+    //applies one changed bookmark to a copy of the current map (record null removes it), then rebuilds the map
+    private void updateBookmark(String url, Record record) {
+        synchronized (RecordAction.class) {
+            bookmarksVersion.incrementAndGet();
+            Map<String, Record> map = bookmarks;
+            if (map != null) {
+                map = new HashMap<>(map);
+                if (record != null) map.put(url, record);
+                else map.remove(url);
+                bookmarks = map;
+            }
+        }
+        rebuildBookmarks(context);
+    }
+
+    //in the background, so the next navigation finds the map ready. Several changes in a row share one rebuild
+    private static void rebuildBookmarks(Context context) {
+        if (rebuildPending.compareAndSet(false, true)) {
+            Databases.read(() -> {
+                rebuildPending.set(false);
+                return loadBookmarks(context);
+            }, null);
+        }
     }
 
     public List<Record> listBookmark (Context context, boolean filter, long filterBy) {
+        return listBookmark(context, filter, filterBy, 0, -1);
+    }
 
-        List<Record> list = new LinkedList<>();
-        Cursor cursor;
-        cursor = database.query(
+    //sorted and filtered by the database, limit < 0 returns all bookmarks from offset on
+    List<Record> listBookmark (Context context, boolean filter, long filterBy, int offset, int limit) {
+        List<Record> list = new ArrayList<>();
+        try (Cursor cursor = database.query(
                 RecordUnit.TABLE_BOOKMARK,
-                new String[] {
-                        RecordUnit.COLUMN_TITLE,
-                        RecordUnit.COLUMN_URL,
-                        RecordUnit.COLUMN_TIME,
-                        RecordUnit.COLUMN_ICON_COLOR,
-                        RecordUnit.COLUMN_DESKTOP_MODE,
-                        RecordUnit.COLUMN_JAVASCRIPT,
-                        RecordUnit.COLUMN_DOM
-                },
-                null,
+                BOOKMARK_COLUMNS,
+                filter ? RecordUnit.COLUMN_ICON_COLOR + " = ?" : null,
+                filter ? new String[] {Long.toString(filterBy)} : null,
                 null,
                 null,
-                null,
-                "time"
-        );
-        if (cursor == null) {
-            return list;
+                getBookmarkOrder(context),
+                limit < 0 && offset == 0 ? null : offset + "," + limit
+        )) {
+            while (cursor.moveToNext()) list.add(getRecord(cursor));
         }
-        cursor.moveToFirst();
-        while (!cursor.isAfterLast()) {
-            if (filter) {
-                if ((getRecord(cursor).getIconColor()) == filterBy) {
-                    list.add(getRecord(cursor));
-                }
-            } else {
-                list.add(getRecord(cursor));
-            }
-            cursor.moveToNext();
-        }
-        cursor.close();
+        return list;
+    }
 
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        String sortBy = Objects.requireNonNull(sp.getString("sort_bookmark", "title"));
+    int countBookmarks (boolean filter, long filterBy) {
+        if (filter) return (int) queryLong("SELECT count(*) FROM " + RecordUnit.TABLE_BOOKMARK + " WHERE " + RecordUnit.COLUMN_ICON_COLOR + " = ?", filterBy);
+        return (int) queryLong("SELECT count(*) FROM " + RecordUnit.TABLE_BOOKMARK);
+    }
 
-        switch (sortBy) {
+    //pages of listBookmark are only read while the list is scrolled, for the overview, onChanged runs when one was read
+    public static List<Record> pageBookmarks (Context context, boolean filter, long filterBy, Runnable onChanged) {
+        return new RecordPages(context, filter, filterBy, onChanged);
+    }
+
+    //same orders as the former sorting in Java, each one is covered by an index (RecordUnit.CREATE_BOOKMARK_SORT_INDEXES)
+    private static String getBookmarkOrder (Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String title = RecordUnit.COLUMN_TITLE + " COLLATE NOCASE DESC, " + RecordUnit.COLUMN_TIME + " DESC";
+        switch (Objects.requireNonNull(sp.getString("sort_bookmark", "title"))) {
             case "icon":
-                Collections.sort(list, Comparator.comparing(Record::getUpperCaseTitle));
-                Collections.sort(list, Comparator.comparingLong(Record::getIconColor));
-                break;
+                return RecordUnit.COLUMN_ICON_COLOR + " DESC, " + title;
             case "date":
-                Collections.sort(list, Comparator.comparingLong(Record::getTime));
-                Collections.reverse(list);
-                break;
-            case "title":
-                Collections.sort(list, Comparator.comparing(Record::getUpperCaseTitle));
-                break;
+                return RecordUnit.COLUMN_TIME + " ASC";
+            default:
+                return title;
         }
-        Collections.reverse(list);
-        return list;
     }
 
     public Record getBookmarkRecordFromUrl(String url) {
@@ -145,64 +271,126 @@ public class RecordAction {
     }
 
 
-    // General
+    // SITE PERMISSIONS
+
+    private static final String PERMISSION_FLAGS;  //bit i is set if PERMISSIONS[i] is 1
+
+    static {
+        StringBuilder flags = new StringBuilder();
+        for (int i = 0; i < RecordUnit.PERMISSIONS.length; i++) {
+            if (i > 0) flags.append(" | ");
+            flags.append("((").append(RecordUnit.PERMISSIONS[i]).append(" IS 1) << ").append(i).append(")");
+        }
+        PERMISSION_FLAGS = flags.toString();
+    }
 
-    public void addDomain(String domain, String table) {
+    //statements are compiled once per process and shared, so they are bound and executed under their lock
+    private long queryLong(String sql, Object... args) {
+        SQLiteStatement statement = helper.getStatement(sql);
+        synchronized (statement) {
+            bind(statement, args);
+            return statement.simpleQueryForLong();
+        }
+    }
+
+    private int execute(String sql, Object... args) {
+        SQLiteStatement statement = helper.getStatement(sql);
+        synchronized (statement) {
+            bind(statement, args);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    private static void bind(SQLiteStatement statement, Object[] args) {
+        statement.clearBindings();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Number) statement.bindLong(i + 1, ((Number) args[i]).longValue());
+            else statement.bindString(i + 1, args[i].toString());
+        }
+    }
+
+    private static String checkPermission(String permission) {
+        for (String p : RecordUnit.PERMISSIONS) if (p.equals(permission)) return permission;
+        throw new IllegalArgumentException("Unknown permission " + permission);
+    }
+
+    private static String host(String domain) {
+        return domain.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public void addDomain(String domain, String permission) {
         if (domain == null || domain.trim().isEmpty()) { return; }
-        ContentValues values = new ContentValues();
-        values.put(RecordUnit.COLUMN_DOMAIN, domain.trim());
-        database.insert(table, null, values);
+        execute("INSERT OR IGNORE INTO " + RecordUnit.TABLE_SITE_PERMISSIONS + " (" + RecordUnit.COLUMN_HOST + ") VALUES (?)", host(domain));
+        execute("UPDATE " + RecordUnit.TABLE_SITE_PERMISSIONS + " SET " + checkPermission(permission) + " = 1 WHERE " + RecordUnit.COLUMN_HOST + " = ?", host(domain));
     }
 
-    public boolean checkDomain(String domain, String table) {
+    public boolean checkDomain(String domain, String permission) {
         if (domain == null || domain.trim().isEmpty()) {
             return false;
         }
-        Cursor cursor = database.query(
-                table,
-                new String[] {RecordUnit.COLUMN_DOMAIN},
-                RecordUnit.COLUMN_DOMAIN + "=?",
-                new String[] {domain.trim()},
-                null,
-                null,
-                null
-        );
-        if (cursor != null) {
-            boolean result = cursor.moveToFirst();
-            cursor.close();
-            return result;
+        return queryLong("SELECT count(*) FROM " + RecordUnit.TABLE_SITE_PERMISSIONS
+                + " WHERE " + RecordUnit.COLUMN_HOST + " = ? AND " + checkPermission(permission) + " = 1", host(domain)) > 0;
+    }
+
+    //all permissions of one host as flags, see RecordUnit.PERMISSIONS
+    public int getPermissions(String domain) {
+        if (domain == null || domain.trim().isEmpty()) {
+            return 0;
         }
-        return false;
+        return (int) queryLong("SELECT ifnull((SELECT " + PERMISSION_FLAGS + " FROM " + RecordUnit.TABLE_SITE_PERMISSIONS
+                + " WHERE " + RecordUnit.COLUMN_HOST + " = ?), 0)", host(domain));
     }
 
-    public void deleteDomain(String domain, String table) {
+    //flags of every host with at least one permission, read with a single query
+    public Map<String, Integer> listPermissions() {
+        Map<String, Integer> map = new HashMap<>();
+        try (Cursor cursor = database.rawQuery("SELECT " + RecordUnit.COLUMN_HOST + ", " + PERMISSION_FLAGS
+                + " FROM " + RecordUnit.TABLE_SITE_PERMISSIONS, null)) {
+            while (cursor.moveToNext()) {
+                if (cursor.getInt(1) != 0) map.put(cursor.getString(0), cursor.getInt(1));
+            }
+        }
+        return map;
+    }
+
+    public void deleteDomain(String domain, String permission) {
         if (domain == null || domain.trim().isEmpty()) { return; }
-        database.execSQL("DELETE FROM "+ table + " WHERE " + RecordUnit.COLUMN_DOMAIN + " = " + "\"" + domain.trim() + "\"");
+        execute("UPDATE " + RecordUnit.TABLE_SITE_PERMISSIONS + " SET " + checkPermission(permission) + " = NULL WHERE " + RecordUnit.COLUMN_HOST + " = ?", host(domain));
+        deleteEmptyPermissions();
     }
 
-    public List<String> listDomains(String table) {
+    public List<String> listDomains(String permission) {
         List<String> list = new ArrayList<>();
-        Cursor cursor = database.query(
-                table,
-                new String[] {RecordUnit.COLUMN_DOMAIN},
-                null,
+        try (Cursor cursor = database.query(
+                RecordUnit.TABLE_SITE_PERMISSIONS,
+                new String[] {RecordUnit.COLUMN_HOST},
+                checkPermission(permission) + " = 1",
                 null,
                 null,
                 null,
-                RecordUnit.COLUMN_DOMAIN
-        );
-        if (cursor == null) {
-            return list;
-        }
-        cursor.moveToFirst();
-        while (!cursor.isAfterLast()) {
-            list.add(cursor.getString(0));
-            cursor.moveToNext();
+                RecordUnit.COLUMN_HOST
+        )) {
+            while (cursor.moveToNext()) list.add(cursor.getString(0));
         }
-        cursor.close();
         return list;
     }
 
+    public void clearPermission(String permission) {
+        database.execSQL("UPDATE " + RecordUnit.TABLE_SITE_PERMISSIONS + " SET " + checkPermission(permission) + " = NULL");
+        deleteEmptyPermissions();
+    }
+
+    private void deleteEmptyPermissions() {
+        StringBuilder where = new StringBuilder();
+        for (String permission : RecordUnit.PERMISSIONS) {
+            if (where.length() > 0) where.append(" AND ");
+            where.append(permission).append(" IS NULL");
+        }
+        execute("DELETE FROM " + RecordUnit.TABLE_SITE_PERMISSIONS + " WHERE " + where);
+    }
+
+    // General
+
     public boolean checkUrl (String url, String table) {
         if (url == null || url.trim().isEmpty()) {
             return false;
@@ -227,11 +415,18 @@ public class RecordAction {
 
     public void deleteURL (String domain, String table) {
         if (domain == null || domain.trim().isEmpty()) { return; }
-        database.execSQL("DELETE FROM "+ table + " WHERE " + RecordUnit.COLUMN_URL + " = " + "\"" + domain.trim() + "\"");
+        database.delete(table, RecordUnit.COLUMN_URL + " = ?", new String[] {domain.trim()});
+        if (table.equals(RecordUnit.TABLE_BOOKMARK)) updateBookmark(domain.trim(), null);
     }
 
     public void clearTable (String table) {
         database.execSQL("DELETE FROM " + table);
+        if (table.equals(RecordUnit.TABLE_BOOKMARK)) {
+            synchronized (RecordAction.class) {
+                bookmarksVersion.incrementAndGet();
+                bookmarks = new HashMap<>();
+            }
+        }
     }
 
     private Record getRecord(Cursor cursor) {
@@ -247,12 +442,12 @@ public class RecordAction {
         return record;
     }
 
-    public List<Record> listEntries (Activity activity) {
-        List<Record> list = new ArrayList<>();
-        RecordAction action = new RecordAction(activity);
-        action.open(false);
-        list.addAll(action.listBookmark(activity, false, 0)); //move bookmarks to top of list
-        action.close();
+    //urls of all bookmarks, without building records
+    public List<String> listBookmarkUrls() {
+        List<String> list = new ArrayList<>();
+        try (Cursor cursor = database.query(RecordUnit.TABLE_BOOKMARK, new String[] {RecordUnit.COLUMN_URL}, null, null, null, null, null)) {
+            while (cursor.moveToNext()) list.add(cursor.getString(0));
+        }
         return list;
     }
 }
\ No newline at end of file
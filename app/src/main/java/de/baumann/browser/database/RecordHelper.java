@@ -3,24 +3,54 @@ package de.baumann.browser.database;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import de.baumann.browser.unit.RecordUnit;
 
 class RecordHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "browser.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 4;
+    private static RecordHelper instance;
+
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
+    private RecordHelper(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
 
-    RecordHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    //one helper and connection for the whole process, it stays open until the database file is replaced
+    static synchronized RecordHelper getInstance(Context context) {
+        if (instance == null) instance = new RecordHelper(context);
+        return instance;
+    }
+
+    //compiled once per query, use the statement while holding its lock
+    synchronized SQLiteStatement getStatement(String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = getWritableDatabase().compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (SQLiteStatement statement : statements.values()) statement.close();
+        statements.clear();
+        super.close();
     }
 
     @Override
     public void onCreate(SQLiteDatabase database) {
-        database.execSQL(RecordUnit.CREATE_WHITELIST);
-        database.execSQL(RecordUnit.CREATE_JAVASCRIPT);
-        database.execSQL(RecordUnit.CREATE_DOM);
-        database.execSQL(RecordUnit.CREATE_COOKIE);
+        database.execSQL(RecordUnit.CREATE_SITE_PERMISSIONS);
         database.execSQL(RecordUnit.CREATE_BOOKMARK);
+        database.execSQL(RecordUnit.CREATE_BOOKMARK_URL_INDEX);
+        for (String index : RecordUnit.CREATE_BOOKMARK_SORT_INDEXES) database.execSQL(index);
     }
 
     // UPGRADE ATTENTION!!!
@@ -29,6 +59,32 @@ class RecordHelper extends SQLiteOpenHelper {
         switch(oldVersion) {
             case 1:
                 // we want all updates, so no break statement here...
+                migrateWhitelists(database);
+            case 2:
+                //keep the newest of bookmarks with identical URL, they were never meant to exist
+                database.execSQL("DELETE FROM " + RecordUnit.TABLE_BOOKMARK + " WHERE rowid NOT IN (SELECT max(rowid) FROM "
+                        + RecordUnit.TABLE_BOOKMARK + " GROUP BY " + RecordUnit.COLUMN_URL + ")");
+                database.execSQL(RecordUnit.CREATE_BOOKMARK_URL_INDEX);
+            case 3:
+                for (String index : RecordUnit.CREATE_BOOKMARK_SORT_INDEXES) database.execSQL(index);
+        }
+    }
+
+    //JAVASCRIPT, DOM and COOKIE tables of version 1 -> one row per host in site_permissions
+    private static void migrateWhitelists(SQLiteDatabase database) {
+        database.execSQL(RecordUnit.CREATE_SITE_PERMISSIONS);
+        String[][] tables = {
+                {RecordUnit.TABLE_JAVASCRIPT, RecordUnit.PERMISSION_JAVASCRIPT},
+                {RecordUnit.TABLE_DOM, RecordUnit.PERMISSION_DOM},
+                {RecordUnit.TABLE_COOKIE, RecordUnit.PERMISSION_COOKIE}};
+        for (String[] table : tables) {
+            String domains = "SELECT lower(trim(" + RecordUnit.COLUMN_DOMAIN + ")) FROM " + table[0]
+                    + " WHERE trim(" + RecordUnit.COLUMN_DOMAIN + ") <> ''";
+            database.execSQL("INSERT OR IGNORE INTO " + RecordUnit.TABLE_SITE_PERMISSIONS + " (" + RecordUnit.COLUMN_HOST + ") " + domains);
+            database.execSQL("UPDATE " + RecordUnit.TABLE_SITE_PERMISSIONS + " SET " + table[1] + " = 1"
+                    + " WHERE " + RecordUnit.COLUMN_HOST + " IN (" + domains + ")");
+            database.execSQL("DROP TABLE IF EXISTS " + table[0]);
         }
+        database.execSQL("DROP TABLE IF EXISTS " + RecordUnit.TABLE_WHITELIST);  //never used
     }
 }
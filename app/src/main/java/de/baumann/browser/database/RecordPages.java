@@ -0,0 +1,106 @@
+package de.baumann.browser.database;
+
+import android.content.Context;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read only view of the sorted bookmarks, loaded page by page on Databases.read while the overview is scrolled.
+ * The list is empty until the bookmarks are counted, entries of pages not read yet are null and onChanged
+ * is run on the main thread once the size or a page is there.
+ * Removing an entry assumes the bookmark was already deleted from the database, the pages are
+ * read again on next access.
+ */
+class RecordPages extends AbstractList<Record> {
+    private static final int PAGE_SIZE = 100;
+
+    private final Context context;
+    private final boolean filter;
+    private final long filterBy;
+    private final Runnable onChanged;
+    private final Map<Integer, List<Record>> pages = new HashMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private int size;
+    private int generation;  //reads started before the pages were dropped are ignored
+
+    RecordPages(Context context, boolean filter, long filterBy, Runnable onChanged) {
+        this.context = context;
+        this.filter = filter;
+        this.filterBy = filterBy;
+        this.onChanged = onChanged;
+        count();
+    }
+
+    //drops all pages and reads the size again, the bookmarks were changed since the pages were read
+    private void count() {
+        pages.clear();
+        loading.clear();
+        int generation = ++this.generation;
+        Databases.read(() -> {
+            RecordAction action = new RecordAction(context);
+            action.open(false);
+            int count = action.countBookmarks(filter, filterBy);
+            action.close();
+            return count;
+        }, count -> {
+            if (generation != this.generation) return;
+            size = count;
+            modCount++;
+            onChanged.run();
+        });
+    }
+
+    private void load(int page) {
+        if (!loading.add(page)) return;
+        int generation = this.generation;
+        Databases.read(() -> {
+            RecordAction action = new RecordAction(context);
+            action.open(false);
+            List<Record> records = action.listBookmark(context, filter, filterBy, page * PAGE_SIZE, PAGE_SIZE);
+            action.close();
+            return records;
+        }, records -> {
+            if (generation != this.generation) return;
+            loading.remove(page);
+            if (records.size() < Math.min(PAGE_SIZE, size - page * PAGE_SIZE)) {
+                count();
+                return;
+            }
+            pages.put(page, records);
+            onChanged.run();
+        });
+    }
+
+    @Override
+    public Record get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        int page = index / PAGE_SIZE;
+        List<Record> records = pages.get(page);
+        if (records == null) {
+            load(page);
+            return null;
+        }
+        return records.get(index - page * PAGE_SIZE);
+    }
+
+    @Override
+    public Record remove(int index) {
+        Record record = get(index);
+        pages.clear();
+        loading.clear();
+        generation++;
+        size--;
+        modCount++;
+        return record;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -17,7 +17,6 @@ package de.baumann.browser.database;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 public class UserScript {
     private String script;
@@ -25,7 +24,12 @@ public class UserScript {
     private int id;
     private int rank;
     private boolean active;
-    private final List<String> matchPatterns = new ArrayList<>();
+    String name;
+    String namespace;
+    String version;
+    List<String> matchPatterns = new ArrayList<>();
+    List<String> includes = new ArrayList<>();
+    List<String> excludes = new ArrayList<>();
     public static String META_BEGIN = "// ==UserScript==";
     public static String META_END = "// ==/UserScript==";
     public static String DOC_START = "document-start";
@@ -36,7 +40,7 @@ public class UserScript {
 
     public UserScript(int id, String script, String type, int rank, boolean active){
         this.id = id;
-        this.script = script;
+        setScript(script);
         this.type = type;
         this.rank = rank;
         this.active = active;
@@ -44,11 +48,23 @@ public class UserScript {
 
     public List<String> getMatchPatterns() {return matchPatterns;}
 
+    public List<String> getIncludes() {return includes;}
+
+    public List<String> getExcludes() {return excludes;}
+
     public String getScript() {
         return script;
     }
 
-    public void setScript(String script) {this.script = script;}
+    //the metadata is parsed once here and stored with the script by UserScriptsHelper
+    public void setScript(String script) {
+        this.script = script;
+        parseMetadata(script);
+    }
+
+    void setScriptOnly(String script) {
+        this.script = script;
+    }
 
     public String getType() {
         return type;
@@ -83,47 +99,69 @@ public class UserScript {
     }
 
     public String getName(){
-        Scanner scanner = new Scanner(script);
-        String name ="@name";
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine();
-            if (line.contains("@name ")) {
-                name = line.split("@name")[1].trim();
-                break;
-            }
-            if (line.contains(META_END)) break;
-        }
-        scanner.close();
-        return name;
+        return name == null ? "@name" : name;
     }
 
     public String getNameSpace(){
-        Scanner scanner = new Scanner(script);
-        String namespace ="@namespace";
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine();
-            if (line.contains("@namepace")) {
-                namespace = line.split("@namespace")[1].trim();
-                break;
-            }
-            if (line.contains(META_END)) break;
-        }
-        scanner.close();
-        return namespace;
+        return namespace == null ? "@namespace" : namespace;
+    }
+
+    public String getVersion(){
+        return version;
     }
 
     public static String getTypefromScript(String script){
-        Scanner scanner = new Scanner(script);
-        String runAt =DOC_END;  //default value
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine();
-            if (line.contains("@run-at")) {
-                runAt = line.split("@run-at")[1].trim().equals(DOC_START) ? DOC_START : DOC_END;
-                break;
+        UserScript userScript = new UserScript();
+        return userScript.parseMetadata(script);
+    }
+
+    //reads the "// @key value" lines up to the end of the metadata block in one pass, returns the @run-at type
+    private String parseMetadata(String script) {
+        name = null;
+        namespace = null;
+        version = null;
+        matchPatterns = new ArrayList<>();
+        includes = new ArrayList<>();
+        excludes = new ArrayList<>();
+        String runAt = DOC_END;  //default value
+        if (script == null) return runAt;
+
+        for (int start = 0, end; start < script.length(); start = end + 1) {
+            end = script.indexOf('\n', start);
+            if (end < 0) end = script.length();
+            String line = script.substring(start, end).trim();
+            if (line.startsWith(META_END)) break;
+            if (!line.startsWith("//")) continue;
+            line = line.substring(2).trim();
+            if (!line.startsWith("@")) continue;
+            int space = 1;
+            while (space < line.length() && !Character.isWhitespace(line.charAt(space))) space++;
+            String key = line.substring(1, space);
+            String value = line.substring(space).trim();
+            switch (key) {
+                case "name":
+                    if (name == null) name = value;
+                    break;
+                case "namespace":
+                    if (namespace == null) namespace = value;
+                    break;
+                case "version":
+                    if (version == null) version = value;
+                    break;
+                case "match":
+                    if (!value.isEmpty()) matchPatterns.add(value);
+                    break;
+                case "include":
+                    if (!value.isEmpty()) includes.add(value);
+                    break;
+                case "exclude":
+                    if (!value.isEmpty()) excludes.add(value);
+                    break;
+                case "run-at":
+                    runAt = value.equals(DOC_START) ? DOC_START : DOC_END;
+                    break;
             }
-            if (line.contains(META_END)) break;
         }
-        scanner.close();
         return runAt;
     }
-}
\ No newline at end of file
+}
@@ -23,11 +23,13 @@ import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class UserScriptsHelper extends SQLiteOpenHelper {
     // Database Version
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
 
     // Database Name
     private static final String DATABASE_NAME = "scripts.db";
@@ -41,6 +43,15 @@ public class UserScriptsHelper extends SQLiteOpenHelper {
     private static final String RANK = "rank";
     private static final String ID = "id";
     private static final String ACTIVE = "active";
+    // metadata of the script, lists are separated by new lines
+    private static final String NAME = "name";
+    private static final String NAMESPACE = "namespace";
+    private static final String VERSION = "version";
+    private static final String MATCHES = "matches";
+    private static final String INCLUDES = "includes";
+    private static final String EXCLUDES = "excludes";
+    private static final String[] COLUMNS = {ID, SCRIPT, TYPE, RANK, ACTIVE, NAME, NAMESPACE, VERSION, MATCHES, INCLUDES, EXCLUDES};
+    private static final String[] METADATA_COLUMNS = {NAME, NAMESPACE, VERSION, MATCHES, INCLUDES, EXCLUDES};
 
     // create Table statement
     private static final String CREATE_TABLE_SCRIPTS = "CREATE TABLE " + TABLE_SCRIPTS + "("+
@@ -48,10 +59,38 @@ public class UserScriptsHelper extends SQLiteOpenHelper {
             SCRIPT + " TEXT," +
             TYPE + " TEXT," +
             RANK + " INTEGER," +
-            ACTIVE + " BIT);";
+            ACTIVE + " BIT," +
+            NAME + " TEXT," +
+            NAMESPACE + " TEXT," +
+            VERSION + " TEXT," +
+            MATCHES + " TEXT," +
+            INCLUDES + " TEXT," +
+            EXCLUDES + " TEXT);";
+
+    private static UserScriptsHelper instance;
+    //changed by every write, ScriptUnit only reads the scripts again when it differs
+    private static final AtomicLong generation = new AtomicLong();
+
+    private UserScriptsHelper(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    //one helper and connection for the whole process, it stays open until the database file is replaced
+    public static synchronized UserScriptsHelper getInstance(Context context) {
+        if (instance == null) instance = new UserScriptsHelper(context);
+        return instance;
+    }
 
-    public UserScriptsHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    public static long getGeneration() {
+        return generation.get();
+    }
+
+    //the database file is replaced, e.g. by restoring a backup
+    @Override
+    public synchronized void close() {
+        super.close();
+        generation.incrementAndGet();
     }
 
     @Override
@@ -63,21 +102,46 @@ public class UserScriptsHelper extends SQLiteOpenHelper {
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         switch(oldVersion) {
             case 1:
+                for (String column : METADATA_COLUMNS) db.execSQL("ALTER TABLE " + TABLE_SCRIPTS + " ADD COLUMN " + column + " TEXT");
+                try (Cursor cursor = db.query(TABLE_SCRIPTS, new String[]{ID, SCRIPT}, null, null, null, null, null)) {
+                    while (cursor.moveToNext()) {
+                        UserScript userScript = new UserScript();
+                        userScript.setScript(cursor.getString(1));
+                        db.update(TABLE_SCRIPTS, getMetadata(userScript), ID + " = ?", new String[]{cursor.getString(0)});
+                    }
+                }
                 // we want all updates, so no break statement here...
         }
     }
 
+    private static ContentValues getMetadata(UserScript userScript) {
+        ContentValues values = new ContentValues();
+        values.put(NAME, userScript.name);
+        values.put(NAMESPACE, userScript.namespace);
+        values.put(VERSION, userScript.version);
+        values.put(MATCHES, String.join("\n", userScript.matchPatterns));
+        values.put(INCLUDES, String.join("\n", userScript.includes));
+        values.put(EXCLUDES, String.join("\n", userScript.excludes));
+        return values;
+    }
+
+    private static List<String> split(String list) {
+        List<String> result = new ArrayList<>();
+        if (list != null && !list.isEmpty()) Collections.addAll(result, list.split("\n"));
+        return result;
+    }
+
     public synchronized int addScript( UserScript userScript) throws SQLiteException {
 
         SQLiteDatabase database = this.getWritableDatabase();
 
-        ContentValues values = new  ContentValues();
+        ContentValues values = getMetadata(userScript);
         values.put(SCRIPT,  userScript.getScript());
         values.put(TYPE,    userScript.getType());
         values.put(RANK,    userScript.getRank());
         values.put(ACTIVE,  userScript.isActive());
         int id = (int) database.insert(TABLE_SCRIPTS, null, values );
-        database.close();
+        generation.incrementAndGet();
         return id;
     }
 
@@ -85,7 +149,7 @@ public class UserScriptsHelper extends SQLiteOpenHelper {
     public synchronized void updateScript(UserScript userScript) {
         SQLiteDatabase database = this.getWritableDatabase();
 
-        ContentValues values = new ContentValues();
+        ContentValues values = getMetadata(userScript);
         values.put(ID, userScript.getId());
         values.put(SCRIPT, userScript.getScript());
         values.put(TYPE,userScript.getType());
@@ -94,80 +158,65 @@ public class UserScriptsHelper extends SQLiteOpenHelper {
 
         database.update(TABLE_SCRIPTS, values, ID + " = ?",
                 new String[]{String.valueOf(userScript.getId())});
-        database.close();
+        generation.incrementAndGet();
     }
 
     public synchronized void deleteScript( int id) throws SQLiteException {
         SQLiteDatabase database = this.getWritableDatabase();
         database.delete(TABLE_SCRIPTS, ID + " = ?", new String[]{Integer.toString(id)});
-        database.close();
+        generation.incrementAndGet();
     }
 
     public synchronized void deleteAllScripts() throws SQLiteException {
         SQLiteDatabase database = this.getWritableDatabase();
         database.delete(TABLE_SCRIPTS, null, null);
-        database.close();
+        generation.incrementAndGet();
     }
 
-    public synchronized List<UserScript> getAllScripts(){
+    public List<UserScript> getAllScripts(){
         SQLiteDatabase database = this.getReadableDatabase();
         List<UserScript> result = new ArrayList<>();
         Cursor cursor;
 
         cursor = database.query(TABLE_SCRIPTS,
-                new String[]{ID, SCRIPT, TYPE, RANK, ACTIVE},
+                COLUMNS,
                 null, null, null, null, RANK);
 
-        UserScript userScript;
-
-        if (cursor.moveToFirst()) {
-            do {
-                userScript = new UserScript();
-                userScript.setId(Integer.parseInt(cursor.getString(0)));
-                userScript.setScript((cursor.getString(1)));
-                userScript.setType(cursor.getString(2));
-                userScript.setRank(Integer.parseInt(cursor.getString(3)));
-                userScript.setActive(Integer.parseInt(cursor.getString(4))==1);
-
-                result.add(userScript);
-            } while (cursor.moveToNext());
-        }
-
+        while (cursor.moveToNext()) result.add(getScript(cursor));
         cursor.close();
-        database.close();
         return result;
     }
 
-    public synchronized List<UserScript> getActiveScriptsByType(String type){
+    //active scripts of all types in one query
+    public List<UserScript> getActiveScripts(){
         SQLiteDatabase database = this.getReadableDatabase();
         List<UserScript> result = new ArrayList<>();
-        Cursor cursor;
-
-        cursor = database.query(TABLE_SCRIPTS,
-                new String[]{ID, SCRIPT, TYPE, RANK, ACTIVE},
-                TYPE + "=?" + " AND " + ACTIVE + "=?", new String[] {type,"1"}, null, null, RANK);
-
-        UserScript userScript;
-
-        if (cursor.moveToFirst()) {
-            do {
-                userScript = new UserScript();
-                userScript.setId(Integer.parseInt(cursor.getString(0)));
-                userScript.setScript((cursor.getString(1)));
-                userScript.setType(cursor.getString(2));
-                userScript.setRank(Integer.parseInt(cursor.getString(3)));
-                userScript.setActive(Integer.parseInt(cursor.getString(4))==1);
-
-                result.add(userScript);
-            } while (cursor.moveToNext());
-        }
-
+        Cursor cursor = database.query(TABLE_SCRIPTS,
+                COLUMNS,
+                ACTIVE + "=?", new String[] {"1"}, null, null, RANK);
+        while (cursor.moveToNext()) result.add(getScript(cursor));
         cursor.close();
-        database.close();
         return result;
     }
 
-    public synchronized int getNumScripts(){
+    //the stored metadata is used, the script is not parsed again
+    private static UserScript getScript(Cursor cursor) {
+        UserScript userScript = new UserScript();
+        userScript.setId(cursor.getInt(0));
+        userScript.setScriptOnly(cursor.getString(1));
+        userScript.setType(cursor.getString(2));
+        userScript.setRank(cursor.getInt(3));
+        userScript.setActive(cursor.getInt(4) == 1);
+        userScript.name = cursor.getString(5);
+        userScript.namespace = cursor.getString(6);
+        userScript.version = cursor.getString(7);
+        userScript.matchPatterns = split(cursor.getString(8));
+        userScript.includes = split(cursor.getString(9));
+        userScript.excludes = split(cursor.getString(10));
+        return userScript;
+    }
+
+    public int getNumScripts(){
         SQLiteDatabase database = this.getReadableDatabase();
 
         Cursor cursor;
@@ -176,7 +225,6 @@ public class UserScriptsHelper extends SQLiteOpenHelper {
 
         int result=cursor.getCount();
         cursor.close();
-        database.close();
         return result;
     }
 
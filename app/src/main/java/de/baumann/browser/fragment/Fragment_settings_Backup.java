@@ -36,14 +36,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import de.baumann.browser.R;
-import de.baumann.browser.database.Record;
+import de.baumann.browser.database.Databases;
 import de.baumann.browser.unit.BackupUnit;
 import de.baumann.browser.view.NinjaToast;
 
@@ -155,10 +153,9 @@ public class Fragment_settings_Backup extends PreferenceFragmentCompat implement
                 new ActivityResultContracts.StartActivityForResult(),
                 result -> {
                     if (result.getData()!=null && result.getData().getData()!=null) {
-                        List<Record> list = new ArrayList<>();
                         try {
                             BufferedReader reader = new BufferedReader(new InputStreamReader(context.getContentResolver().openInputStream(result.getData().getData())));
-                            BackupUnit.importBookmarksFromFile(context, reader, list);
+                            importBookmarksFromFile(reader);
                         } catch (Exception e) {
                             e.printStackTrace();
                             Toast.makeText(context,e.toString(), Toast.LENGTH_LONG).show();
@@ -206,6 +203,7 @@ public class Fragment_settings_Backup extends PreferenceFragmentCompat implement
                 }
             }
             try {
+                Databases.checkpoint(context);
                 ZipFile zipFile = new ZipFile(dbBackup);
                 zipFile.addFolder(intDatabase);
                 NinjaToast.show(context," -> " + dbBackup.toString());
@@ -273,10 +271,9 @@ public class Fragment_settings_Backup extends PreferenceFragmentCompat implement
                 intent.setType("text/html");
                 mImportBookmarks.launch(intent);
             } else {
-                List<Record> list = new ArrayList<>();
                 try {
                     BufferedReader reader = new BufferedReader(new FileReader(file));
-                    BackupUnit.importBookmarksFromFile(context, reader, list);
+                    importBookmarksFromFile(reader);
                 } catch (Exception e) {
                     e.printStackTrace();
                     Toast.makeText(context,e.toString(), Toast.LENGTH_LONG).show();
@@ -285,6 +282,22 @@ public class Fragment_settings_Backup extends PreferenceFragmentCompat implement
         }
     }
 
+    //parsed and written on the database writer thread
+    private void importBookmarksFromFile(BufferedReader reader) {
+        Databases.write(() -> {
+            try {
+                BackupUnit.importBookmarksFromFile(context, reader);
+                return null;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return e.toString();
+            }
+        }, error -> {
+            if (error == null) NinjaToast.show(context, context.getString(R.string.app_done));
+            else Toast.makeText(context, error, Toast.LENGTH_LONG).show();
+        });
+    }
+
     private void initSummary(Preference p) {
         if (p instanceof PreferenceGroup) {
             PreferenceGroup pGrp = (PreferenceGroup) p;
@@ -16,6 +16,7 @@ import de.baumann.browser.R;
 import de.baumann.browser.activity.Whitelist_DOM;
 import de.baumann.browser.browser.AdBlock;
 import de.baumann.browser.browser.BannerBlock;
+import de.baumann.browser.browser.CosmeticFilter;
 
 public class Fragment_settings_Start extends PreferenceFragmentCompat implements SharedPreferences.OnSharedPreferenceChangeListener{
 
@@ -77,8 +78,10 @@ public class Fragment_settings_Start extends PreferenceFragmentCompat implements
 
     @Override
     public void onSharedPreferenceChanged(final SharedPreferences sp, String key) {
-        if (key.equals("ab_hosts") || key.equals("sp_ad_block") || key.equals("customHostListSwitch") || key.equals("sp_custom_host_list") ) {
+        if (key.equals("ab_hosts") || key.equals("sp_ad_block") || key.equals("customHostListSwitch") || key.equals("sp_custom_host_list") || key.equals("abSubscriptionsSwitch") || key.equals("sp_ab_subscriptions") ) {
             AdBlock.downloadHosts(getActivity());
+        } else if (key.equals("cosmeticRulesSwitch") || key.equals("sp_cosmetic_rules")) {
+            CosmeticFilter.load(getActivity());
         } else if (key.equals("sp_deny_cookie_banners")) {
             if (sp.getBoolean("sp_deny_cookie_banners",false)) BannerBlock.downloadBanners(getActivity());
 //        } else if (key.equals("sp_userAgent") ||
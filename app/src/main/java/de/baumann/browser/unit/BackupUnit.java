@@ -43,12 +43,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
-import java.util.Collections;
-import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import de.baumann.browser.R;
+import de.baumann.browser.browser.Whitelist;
+import de.baumann.browser.database.Databases;
 import de.baumann.browser.database.Record;
 import de.baumann.browser.database.RecordAction;
 import de.baumann.browser.view.NinjaToast;
@@ -101,6 +101,7 @@ public class BackupUnit {
     }
 
     public static void zipExtract(Context context, File targetDir, Uri zipFile) {
+        Databases.close(context);
         ZipEntry zipEntry;
         int readLen;
         byte[] readBuffer = new byte[4096];
@@ -123,6 +124,8 @@ public class BackupUnit {
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
+        Whitelist.reloadAll();
+        RecordAction.invalidateBookmarks(context);
     }
 
     public static void makeBackupDir () {
@@ -163,68 +166,57 @@ public class BackupUnit {
         NinjaToast.show(context, context.getString(R.string.app_done));
     }
 
-    public static void importBookmarksFromFile(Context context, BufferedReader reader, List<Record> list) throws IOException {
+    //streams the Netscape bookmark file into the database, returns the number of imported bookmarks
+    public static int importBookmarksFromFile(Context context, BufferedReader reader) throws IOException {
         BrowserUnit.clearBookmark(context);
         RecordAction action = new RecordAction(context);
         action.open(true);
-        String line;
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            if (!((line.startsWith("<dt><a ") && line.endsWith("</a>")) || (line.startsWith("<DT><A ") && line.endsWith("</A>")))) {
-                continue;
-            }
-            if (checkLegacyBookmark(line)){  //Legacy Bookmark without COLORS and FLAGS
-                String title = BackupUnit.getBookmarkTitle(line);
-                String url = BackupUnit.getBookmarkURL(line);
-                long date = BackupUnit.getBookmarkDate(line);
-                if (date >123) date=11;  //if no color defined yet set it red (123 is max: 11 for color + 16 for desktop mode + 32 for Javascript + 64 for DOM Content
-                if (title.trim().isEmpty() || url.trim().isEmpty()) {
-                    continue;
-                }
-                Record record = new Record();
-                record.setTitle(title);
-                record.setURL(url);
-                record.setIconColor((int) (date&15));
-                record.setDesktopMode((date&16)==16);
-                record.setJavascript(!((date&32)==32));
-                record.setDomStorage(!((date&64)==64));
-                if (!action.checkUrl(url, RecordUnit.TABLE_BOOKMARK)) {
-                    list.add(record);
-                }
-            } else {
-                String title = BackupUnit.getBookmarkTitle(line);
-                String url = BackupUnit.getBookmarkURL(line);
-                if (title.trim().isEmpty() || url.trim().isEmpty()) {
-                    continue;
-                }
-                Record record = new Record();
-                record.setTitle(title);
-                record.setURL(url);
-                record.setTime(BackupUnit.getBookmarkDate(line));
-                record.setIconColor(BackupUnit.getBookmarkColor(line));
-                int flags = BackupUnit.getBookmarkFlags(line);
-                record.setDesktopMode((flags&16)==16);
-                record.setJavascript(!((flags&32)==32));
-                record.setDomStorage(!((flags&64)==64));
-                if (!action.checkUrl(url, RecordUnit.TABLE_BOOKMARK)) {
-                    list.add(record);
+        try {
+            return action.addBookmarks(() -> {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Record record = parseBookmark(line.trim());
+                    if (record != null) return record;
                 }
-            }
+                return null;
+            });
+        } finally {
+            reader.close();
+            action.close();
         }
-        reader.close();
-        Collections.sort(list, (first, second) -> first.getTitle().compareTo(second.getTitle()));
-        for (Record record : list) {
-            action.addBookmark(record);
+    }
+
+    private static Record parseBookmark(String line) {
+        if (!((line.startsWith("<dt><a ") && line.endsWith("</a>")) || (line.startsWith("<DT><A ") && line.endsWith("</A>")))) {
+            return null;
         }
-        action.close();
-        NinjaToast.show(context, context.getString(R.string.app_done));
+        String title = BackupUnit.getBookmarkTitle(line);
+        String url = BackupUnit.getBookmarkURL(line);
+        if (title.trim().isEmpty() || url.trim().isEmpty()) {
+            return null;
+        }
+        Record record = new Record();
+        record.setTitle(title);
+        record.setURL(url);
+        if (checkLegacyBookmark(line)){  //Legacy Bookmark without COLORS and FLAGS
+            long date = BackupUnit.getBookmarkDate(line);
+            if (date >123) date=11;  //if no color defined yet set it red (123 is max: 11 for color + 16 for desktop mode + 32 for Javascript + 64 for DOM Content
+            record.setIconColor((int) (date&15));
+            record.setDesktopMode((date&16)==16);
+            record.setJavascript(!((date&32)==32));
+            record.setDomStorage(!((date&64)==64));
+        } else {
+            record.setTime(BackupUnit.getBookmarkDate(line));
+            record.setIconColor(BackupUnit.getBookmarkColor(line));
+            int flags = BackupUnit.getBookmarkFlags(line);
+            record.setDesktopMode((flags&16)==16);
+            record.setJavascript(!((flags&32)==32));
+            record.setDomStorage(!((flags&64)==64));
+        }
+        return record;
     }
 
     public static void exportBookmarks(Context context) {
-        RecordAction action = new RecordAction(context);
-        action.open(false);
-        List<Record> list = action.listBookmark(context, false, 0);
-        action.close();
         File file = new File(Environment.getExternalStoragePublicDirectory(DIRECTORY_DOCUMENTS), "browser_backup//export_bookmark_free.html");
         if (!BackupUnit.checkPermissionStorage(context)) {
             BackupUnit.requestPermission((Activity) context);
@@ -234,24 +226,31 @@ public class BackupUnit {
                     Toast.makeText(context, context.getResources().getString(R.string.toast_delete), Toast.LENGTH_LONG).show();
                 }
             }
-            try {
-                BufferedWriter writer = new BufferedWriter(new FileWriter(file, false));
-                for (Record record : list) {
-                    String type = BOOKMARK_TYPE;
-                    type = type.replace(BOOKMARK_TITLE, record.getTitle());
-                    type = type.replace(BOOKMARK_URL, record.getURL());
-                    type = type.replace(BOOKMARK_TIME, String.valueOf(record.getTime()));
-                    type = type.replace(BOOKMARK_COLOR, String.valueOf(record.getIconColor()));
-                    type = type.replace(BOOKMARK_FLAGS,String.valueOf((long) (record.getDesktopMode() ? 16 : 0) + (long) (record.getJavascript() ? 0 : 32) + (long) (record.getDomStorage() ? 0 : 64)));
-                    writer.write(type);
-                    writer.newLine();
+            Databases.read(() -> {
+                RecordAction action = new RecordAction(context);
+                action.open(false);
+                try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, false))) {
+                    action.exportBookmarks(context, record -> {
+                        String type = BOOKMARK_TYPE;
+                        type = type.replace(BOOKMARK_TITLE, record.getTitle());
+                        type = type.replace(BOOKMARK_URL, record.getURL());
+                        type = type.replace(BOOKMARK_TIME, String.valueOf(record.getTime()));
+                        type = type.replace(BOOKMARK_COLOR, String.valueOf(record.getIconColor()));
+                        type = type.replace(BOOKMARK_FLAGS,String.valueOf((long) (record.getDesktopMode() ? 16 : 0) + (long) (record.getJavascript() ? 0 : 32) + (long) (record.getDomStorage() ? 0 : 64)));
+                        writer.write(type);
+                        writer.newLine();
+                    });
+                    return null;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    return e.toString();
+                } finally {
+                    action.close();
                 }
-                writer.close();
-                NinjaToast.show(context, context.getString(R.string.app_done));
-            } catch (Exception e) {
-                e.printStackTrace();
-                Toast.makeText(context,e.toString(), Toast.LENGTH_LONG).show();
-            }
+            }, error -> {
+                if (error == null) NinjaToast.show(context, context.getString(R.string.app_done));
+                else Toast.makeText(context, error, Toast.LENGTH_LONG).show();
+            });
         }
     }
 
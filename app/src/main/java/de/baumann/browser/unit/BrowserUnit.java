@@ -27,6 +27,11 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Calendar;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.regex.Matcher;
@@ -318,13 +323,83 @@ public class BrowserUnit {
         }
     }
 
-    public static String youtubeRedirect(String url, String invidiousDomain) {
-        final Pattern VIDEO_URL_PATTERN = Pattern.compile("https://([^/]+)\\.youtube\\.com/watch\\?(.*)v=([^&]+)");
-        final Pattern YOUTU_BE_URL_PATTERN = Pattern.compile("https://youtu\\.be/([^/]+)");
-        final Pattern SEARCH_URL_PATTERN = Pattern.compile("https://www\\.youtube\\.com/results\\?(.*)search_query=([^&]+)");
-        final Pattern YOUTUBE_DOMAIN_PATTERN = Pattern.compile("https://([^/]+)\\.youtube\\.com/(.*)");
-        final Pattern NOCOOKIE_EMBED_URL_PATTERN = Pattern.compile("https://www\\.youtube-nocookie\\.com/embed/([^/]+)");
+    //conditional download of block lists: validators are stored per target file together with the url they belong to
+    public static HttpURLConnection openListConnection(Context context, String url, File file) throws IOException {
+        return openListConnection(PreferenceManager.getDefaultSharedPreferences(context), url, file);
+    }
+
+    public static HttpURLConnection openListConnection(SharedPreferences sp, String url, File file) throws IOException {
+        String key = "list_" + file.getName();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setReadTimeout(5000);
+        connection.setConnectTimeout(10000);
+        if (file.exists() && url.equals(sp.getString(key + "_url", ""))) {
+            String etag = sp.getString(key + "_etag", "");
+            String modified = sp.getString(key + "_modified", "");
+            if (!etag.isEmpty()) connection.setRequestProperty("If-None-Match", etag);
+            if (!modified.isEmpty()) connection.setRequestProperty("If-Modified-Since", modified);
+        }
+        return connection;
+    }
+
+    public static void saveListValidators(Context context, String url, File file, URLConnection connection) {
+        saveListValidators(PreferenceManager.getDefaultSharedPreferences(context), url, file, connection);
+    }
+
+    public static void saveListValidators(SharedPreferences sp, String url, File file, URLConnection connection) {
+        String etag = connection.getHeaderField("ETag");
+        String modified = connection.getHeaderField("Last-Modified");
+        String key = "list_" + file.getName();
+        sp.edit()
+                .putString(key + "_url", url)
+                .putString(key + "_etag", etag == null ? "" : etag)
+                .putString(key + "_modified", modified == null ? "" : modified)
+                .putLong(key + "_checked", System.currentTimeMillis())
+                .apply();
+    }
 
+    public static void clearListValidators(Context context, File file) {
+        String key = "list_" + file.getName();
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .remove(key + "_url")
+                .remove(key + "_etag")
+                .remove(key + "_modified")
+                .remove(key + "_checked")
+                .apply();
+    }
+
+    //server confirmed that the local copy is still current
+    public static void setListChecked(Context context, File file) {
+        setListChecked(PreferenceManager.getDefaultSharedPreferences(context), file);
+    }
+
+    public static void setListChecked(SharedPreferences sp, File file) {
+        sp.edit().putLong("list_" + file.getName() + "_checked", System.currentTimeMillis()).apply();
+    }
+
+    public static boolean isListUpdateDue(Context context, File file) {
+        return isListUpdateDue(PreferenceManager.getDefaultSharedPreferences(context), file, isUnmeteredConnection(context) ? 3 : 7);
+    }
+
+    public static boolean isListUpdateDue(SharedPreferences sp, File file, int days) {
+        Calendar time = Calendar.getInstance();
+        time.add(Calendar.DAY_OF_YEAR,-days);
+        long checked = sp.getLong("list_" + file.getName() + "_checked", 0);
+        return Math.max(file.lastModified(), checked) < time.getTimeInMillis();
+    }
+
+    private static final Pattern VIDEO_URL_PATTERN = Pattern.compile("https://([^/]+)\\.youtube\\.com/watch\\?(.*)v=([^&]+)");
+    private static final Pattern YOUTU_BE_URL_PATTERN = Pattern.compile("https://youtu\\.be/([^/]+)");
+    private static final Pattern SEARCH_URL_PATTERN = Pattern.compile("https://www\\.youtube\\.com/results\\?(.*)search_query=([^&]+)");
+    private static final Pattern YOUTUBE_DOMAIN_PATTERN = Pattern.compile("https://([^/]+)\\.youtube\\.com/(.*)");
+    private static final Pattern NOCOOKIE_EMBED_URL_PATTERN = Pattern.compile("https://www\\.youtube-nocookie\\.com/embed/([^/]+)");
+
+    //cheap pre-check so youtubeRedirect only runs its patterns for urls it can rewrite
+    public static boolean isYoutubeHost(String host) {
+        return host != null && (host.endsWith(".youtube.com") || host.equals("youtu.be") || host.equals("www.youtube-nocookie.com"));
+    }
+
+    public static String youtubeRedirect(String url, String invidiousDomain) {
         String redirectedUrl = url;
         if (!invidiousDomain.startsWith("http")) invidiousDomain="https://"+invidiousDomain;
         invidiousDomain=Uri.parse(invidiousDomain).getHost();
@@ -6,6 +6,7 @@ public class RecordUnit {
     public static final String TABLE_JAVASCRIPT = "JAVASCRIPT";
     public static final String TABLE_COOKIE = "COOKIE";
     public static final String TABLE_DOM = "DOM";
+    public static final String TABLE_SITE_PERMISSIONS = "site_permissions";
 
     public static final String COLUMN_TITLE = "TITLE";
     public static final String COLUMN_URL = "URL";
@@ -15,6 +16,16 @@ public class RecordUnit {
     public static final String COLUMN_DESKTOP_MODE = "DESKTOP_MODE";
     public static final String COLUMN_JAVASCRIPT = "JAVASCRIPT";
     public static final String COLUMN_DOM = "DOM";
+    public static final String COLUMN_HOST = "host";
+
+    //columns of TABLE_SITE_PERMISSIONS, 1 = allowed for the host, NULL = default. Bit i of RecordAction.getPermissions is PERMISSIONS[i]
+    public static final String PERMISSION_JAVASCRIPT = "js";
+    public static final String PERMISSION_DOM = "dom";
+    public static final String PERMISSION_COOKIE = "cookie";
+    public static final String PERMISSION_ADBLOCK = "adblock";
+    public static final String PERMISSION_FINGERPRINT = "fingerprint";
+    public static final String PERMISSION_DESKTOP = "desktop";
+    public static final String[] PERMISSIONS = {PERMISSION_JAVASCRIPT, PERMISSION_DOM, PERMISSION_COOKIE, PERMISSION_ADBLOCK, PERMISSION_FINGERPRINT, PERMISSION_DESKTOP};
 
     public static final String CREATE_BOOKMARK = "CREATE TABLE "
             + TABLE_BOOKMARK
@@ -28,28 +39,29 @@ public class RecordUnit {
             + " " + COLUMN_DOM + " bit"
             + ")";
 
-    public static final String CREATE_WHITELIST = "CREATE TABLE "
-            + TABLE_WHITELIST
-            + " ("
-            + " " + COLUMN_DOMAIN + " text"
-            + ")";
-
-    public static final String CREATE_JAVASCRIPT = "CREATE TABLE "
-            + TABLE_JAVASCRIPT
-            + " ("
-            + " " + COLUMN_DOMAIN + " text"
-            + ")";
+    public static final String CREATE_BOOKMARK_URL_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS bookmark_url ON "
+            + TABLE_BOOKMARK + " (" + COLUMN_URL + ")";
 
-    public static final String CREATE_COOKIE = "CREATE TABLE "
-            + TABLE_COOKIE
-            + " ("
-            + " " + COLUMN_DOMAIN + " text"
-            + ")";
+    //one index per sort order of RecordAction.listBookmark, the icon index also serves the color filter
+    public static final String[] CREATE_BOOKMARK_SORT_INDEXES = {
+            "CREATE INDEX IF NOT EXISTS bookmark_title ON " + TABLE_BOOKMARK
+                    + " (" + COLUMN_TITLE + " COLLATE NOCASE, " + COLUMN_TIME + ")",
+            "CREATE INDEX IF NOT EXISTS bookmark_icon ON " + TABLE_BOOKMARK
+                    + " (" + COLUMN_ICON_COLOR + ", " + COLUMN_TITLE + " COLLATE NOCASE, " + COLUMN_TIME + ")",
+            "CREATE INDEX IF NOT EXISTS bookmark_time ON " + TABLE_BOOKMARK
+                    + " (" + COLUMN_TIME + ")"
+    };
 
-    public static final String CREATE_DOM = "CREATE TABLE "
-            + TABLE_DOM
+    public static final String CREATE_SITE_PERMISSIONS = "CREATE TABLE "
+            + TABLE_SITE_PERMISSIONS
             + " ("
-            + " " + COLUMN_DOMAIN + " text"
+            + " " + COLUMN_HOST + " text PRIMARY KEY NOT NULL,"
+            + " " + PERMISSION_JAVASCRIPT + " integer,"
+            + " " + PERMISSION_DOM + " integer,"
+            + " " + PERMISSION_COOKIE + " integer,"
+            + " " + PERMISSION_ADBLOCK + " integer,"
+            + " " + PERMISSION_FINGERPRINT + " integer,"
+            + " " + PERMISSION_DESKTOP + " integer"
             + ")";
 
 }
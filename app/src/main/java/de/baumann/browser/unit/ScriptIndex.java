@@ -0,0 +1,200 @@
+package de.baumann.browser.unit;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import de.baumann.browser.database.UserScript;
+
+/**
+ * The @match patterns of the active user scripts of one type, compiled once by ScriptUnit.initScripts.
+ * Chrome style patterns (scheme://host/path) are indexed by host and their path is matched as a glob,
+ * "*.example.com" is found by walking the parent domains of the url. Only "/regex/" patterns and patterns
+ * with a wildcard inside the host or an unknown scheme are matched as regular expressions.
+ * @include and @exclude patterns are globs on the whole url or "/regex/".
+ */
+final class ScriptIndex {
+
+    static final ScriptIndex EMPTY = new ScriptIndex(new ArrayList<>(), new ArrayList<>());
+
+    private final List<UserScript> scripts;  //in rank order
+    private final Map<String, List<Entry>> hosts = new HashMap<>();    //exact host
+    private final Map<String, List<Entry>> domains = new HashMap<>();  //host and its subdomains
+    private final List<Entry> anyHost = new ArrayList<>();
+    private final List<Entry> regex = new ArrayList<>();
+    private final List<Entry> urls = new ArrayList<>();   //@include globs
+    private final Map<Integer, List<Entry>> excludes = new HashMap<>();
+
+    private static final class Entry {
+        final int script;      //position in scripts
+        final String scheme;   //http, https or null for both
+        final String path;     //glob with * wildcards, the whole url for @include and @exclude
+        final Pattern pattern; //whole url, only for regex patterns
+
+        Entry(int script, String scheme, String path, Pattern pattern) {
+            this.script = script;
+            this.scheme = scheme;
+            this.path = path;
+            this.pattern = pattern;
+        }
+    }
+
+    /** Builds the index, invalid patterns are collected in errors. */
+    ScriptIndex(List<UserScript> scripts, List<String> errors) {
+        this.scripts = scripts;
+        for (int i = 0; i < scripts.size(); i++) {
+            UserScript script = scripts.get(i);
+            for (String pattern : script.getMatchPatterns()) {
+                try {
+                    add(i, pattern);
+                } catch (PatternSyntaxException e) {
+                    errors.add("@match: " + e);
+                }
+            }
+            for (String pattern : script.getIncludes()) {
+                try {
+                    Entry entry = getUrlEntry(i, pattern);
+                    (entry.pattern != null ? regex : urls).add(entry);
+                } catch (PatternSyntaxException e) {
+                    errors.add("@include: " + e);
+                }
+            }
+            for (String pattern : script.getExcludes()) {
+                try {
+                    excludes.computeIfAbsent(i, k -> new ArrayList<>()).add(getUrlEntry(i, pattern));
+                } catch (PatternSyntaxException e) {
+                    errors.add("@exclude: " + e);
+                }
+            }
+        }
+    }
+
+    private static Entry getUrlEntry(int script, String pattern) {
+        if (pattern.length() > 1 && pattern.startsWith("/") && pattern.endsWith("/")) {
+            return new Entry(script, null, null, Pattern.compile(pattern.substring(1, pattern.length() - 1)));
+        }
+        return new Entry(script, null, pattern, null);
+    }
+
+    private static boolean matches(Entry entry, String url) {
+        return entry.pattern != null ? entry.pattern.matcher(url).matches() : glob(entry.path, url);
+    }
+
+    private void add(int script, String pattern) {
+        if (pattern.length() > 1 && pattern.startsWith("/") && pattern.endsWith("/")) {
+            regex.add(new Entry(script, null, null, Pattern.compile(pattern.substring(1, pattern.length() - 1))));
+            return;
+        }
+        int schemeEnd = pattern.indexOf("://");
+        int hostEnd = schemeEnd < 0 ? -1 : pattern.indexOf('/', schemeEnd + 3);
+        String scheme = schemeEnd < 0 ? "" : pattern.substring(0, schemeEnd);
+        String host = hostEnd < 0 ? "" : pattern.substring(schemeEnd + 3, hostEnd).toLowerCase(Locale.ROOT);
+        String subdomains = host.startsWith("*.") ? host.substring(2) : host;
+        if (hostEnd < 0 || !(scheme.equals("*") || scheme.equals("http") || scheme.equals("https")) || subdomains.indexOf('*') >= 0 && !host.equals("*")) {
+            regex.add(new Entry(script, null, null, Pattern.compile(getRegex(pattern))));
+            return;
+        }
+        //the slash by itself matches any path, as if it were followed by a wildcard
+        String path = pattern.substring(hostEnd);
+        if (path.endsWith("/")) path += "*";
+        Entry entry = new Entry(script, scheme.equals("*") ? null : scheme, path, null);
+        if (host.equals("*")) anyHost.add(entry);
+        else if (host.startsWith("*.")) domains.computeIfAbsent(subdomains, k -> new ArrayList<>()).add(entry);
+        else hosts.computeIfAbsent(host, k -> new ArrayList<>()).add(entry);
+    }
+
+    //the former translation of all patterns, still used for those not fitting the index
+    private static String getRegex(String pattern) {
+        String regex = pattern
+                .replace(".", "\\.")
+                .replace("*://", "(http|https)://")
+                .replace("*", ".*")
+                .replace("?", "\\?")
+                .replace("/", "\\/");
+        if (regex.endsWith("/")) regex += ".*";
+        return regex;
+    }
+
+    List<UserScript> find(String url) {
+        List<UserScript> matched = new ArrayList<>();
+        if (url == null || scripts.isEmpty()) return matched;
+
+        //only http and https urls with a path, like [a-z0-9.-]+ hosts
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) return matched;
+        String scheme = url.substring(0, schemeEnd).toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https")) return matched;
+        int pathStart = url.indexOf('/', schemeEnd + 3);
+        if (pathStart < 0) return matched;
+        String host = url.substring(schemeEnd + 3, pathStart).toLowerCase(Locale.ROOT);
+        if (host.isEmpty()) return matched;
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '.' || c == '-')) return matched;
+        }
+        String path = url.substring(pathStart);
+
+        BitSet found = new BitSet(scripts.size());
+        match(hosts.get(host), scheme, path, found);
+        for (int start = 0; start >= 0; ) {
+            match(domains.get(start == 0 ? host : host.substring(start)), scheme, path, found);
+            int dot = host.indexOf('.', start);
+            start = dot < 0 ? -1 : dot + 1;
+        }
+        match(anyHost, scheme, path, found);
+        for (Entry entry : regex) {
+            if (!found.get(entry.script) && entry.pattern.matcher(url).matches()) found.set(entry.script);
+        }
+        for (Entry entry : urls) {
+            if (!found.get(entry.script) && glob(entry.path, url)) found.set(entry.script);
+        }
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            if (!isExcluded(i, url)) matched.add(scripts.get(i));
+        }
+        return matched;
+    }
+
+    private boolean isExcluded(int script, String url) {
+        List<Entry> entries = excludes.get(script);
+        if (entries == null) return false;
+        for (Entry entry : entries) {
+            if (matches(entry, url)) return true;
+        }
+        return false;
+    }
+
+    private static void match(List<Entry> entries, String scheme, String path, BitSet found) {
+        if (entries == null) return;
+        for (Entry entry : entries) {
+            if (found.get(entry.script)) continue;
+            if (entry.scheme != null && !entry.scheme.equals(scheme)) continue;
+            if (glob(entry.path, path)) found.set(entry.script);
+        }
+    }
+
+    //* matches any sequence of characters, everything else literally
+    static boolean glob(String pattern, String text) {
+        int p = 0, t = 0, star = -1, mark = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = t;
+            } else if (p < pattern.length() && pattern.charAt(p) == text.charAt(t)) {
+                p++;
+                t++;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') p++;
+        return p == pattern.length();
+    }
+}
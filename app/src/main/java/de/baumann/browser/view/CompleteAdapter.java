@@ -1,7 +1,6 @@
 package de.baumann.browser.view;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -216,14 +215,7 @@ public class CompleteAdapter extends BaseAdapter implements Filterable {
 
         HelperUnit.setFilterIcons(holder.iconView,item.getIconColor());
 
-        FaviconHelper faviconHelper = new FaviconHelper(context);
-        Bitmap bitmap=faviconHelper.getFavicon(item.url);
-
-        if (bitmap != null) {
-            holder.favicon.setImageBitmap(bitmap);
-        } else {
-            holder.favicon.setImageResource(R.drawable.icon_image_broken_light);
-        }
+        FaviconHelper.loadFavicon(context, holder.favicon, item.url, R.drawable.icon_image_broken_light);
 
         holder.iconView.setVisibility(View.VISIBLE);
         holder.favicon.setVisibility(View.VISIBLE);
@@ -2,7 +2,6 @@ package de.baumann.browser.view;
 
 import static androidx.webkit.WebViewMediaIntegrityApiStatusConfig.WEBVIEW_MEDIA_INTEGRITY_API_DISABLED;
 import android.annotation.SuppressLint;
-import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
@@ -24,6 +23,7 @@ import android.widget.ImageView;
 
 import de.baumann.browser.browser.*;
 import de.baumann.browser.R;
+import de.baumann.browser.database.Databases;
 import de.baumann.browser.database.FaviconHelper;
 import de.baumann.browser.database.Record;
 import de.baumann.browser.database.RecordAction;
@@ -31,7 +31,6 @@ import de.baumann.browser.unit.BrowserUnit;
 
 import java.net.URISyntaxException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Objects;
 
 public class NinjaWebView extends WebView implements AlbumController {
@@ -98,7 +97,6 @@ public class NinjaWebView extends WebView implements AlbumController {
 
     private Javascript javaHosts;
     private DOM DOMHosts;
-    private Cookie cookieHosts;
     private Bitmap favicon;
     private SharedPreferences sp;
 
@@ -136,7 +134,6 @@ public class NinjaWebView extends WebView implements AlbumController {
         this.isBookmark=false;
         this.javaHosts = new Javascript(this.context);
         this.DOMHosts = new DOM(this.context);
-        this.cookieHosts = new Cookie(this.context);
         this.album = new AlbumItem(this.context, this, this.browserController);
         this.webViewClient = new NinjaWebViewClient(this);
         this.webChromeClient = new NinjaWebChromeClient(this);
@@ -189,28 +186,24 @@ public class NinjaWebView extends WebView implements AlbumController {
         } else {
             this.setImportantForAutofill(View.IMPORTANT_FOR_AUTOFILL_NO);
         }
+        webViewClient.updateDocumentStartScript(this);  //fingerprint protection and cookie banner settings may have changed
 
         if (url != null) {
 
             //check if url is a bookmark and apply settings accordingly
             //if one of the previous sites was a bookmark keep settings
-            RecordAction action = new RecordAction(context);
-            action.open(false);
-            List<Record> list = action.listEntries((Activity) context);
-            action.close();
-            for (Record record:list){
-                if (record.getURL().equals(url)){
-                    if (record.getDesktopMode() != isDesktopMode()) toggleDesktopMode(false);
-                    setJavaScript(record.getJavascript());
-                    setDomStorage(record.getDomStorage());
-                    setIsBookmark(true);
-                    setOldDomain(url);
-                    break;
-                }
+            Record record = RecordAction.findBookmark(context, url);
+            if (record != null) {
+                if (record.getDesktopMode() != isDesktopMode()) toggleDesktopMode(false);
+                setJavaScript(record.getJavascript());
+                setDomStorage(record.getDomStorage());
+                setIsBookmark(true);
+                setOldDomain(url);
             }
 
+            int white = Whitelist.getFlags(context, url);
             CookieManager manager = CookieManager.getInstance();
-            if (cookieHosts.isWhite(url) || sp.getBoolean("sp_cookies", true)) {
+            if ((white & Whitelist.COOKIE) != 0 || sp.getBoolean("sp_cookies", true)) {
                 manager.setAcceptCookie(true);
                 if (!fingerPrintProtection){  //allow third party cookies if fingerprint protection is off
                     manager.setAcceptThirdPartyCookies(this,true);
@@ -227,15 +220,15 @@ public class NinjaWebView extends WebView implements AlbumController {
                 domain = AdBlock.getDomain(url);
             } catch (URISyntaxException e) {
                 //do not change setting if staying within same domain
-                setJavaScript(javaHosts.isWhite(url) || javaScriptInherited);
-                setDomStorage(DOMHosts.isWhite(url) || domStorageInherited);
+                setJavaScript((white & Whitelist.JAVASCRIPT) != 0 || javaScriptInherited);
+                setDomStorage((white & Whitelist.DOM) != 0 || domStorageInherited);
                 e.printStackTrace();
             }
 
             //do not change setting if staying within same domain
             if (!oldDomain.equals(domain)){
-                setJavaScript(javaHosts.isWhite(url) || javaScriptInherited);
-                setDomStorage(DOMHosts.isWhite(url) || domStorageInherited);
+                setJavaScript((white & Whitelist.JAVASCRIPT) != 0 || javaScriptInherited);
+                setDomStorage((white & Whitelist.DOM) != 0 || domStorageInherited);
                 setIsBookmark(false);
             }
 
@@ -252,6 +245,7 @@ public class NinjaWebView extends WebView implements AlbumController {
         }
         if (domain == null) oldDomain = "";
         else oldDomain = domain;
+        webViewClient.setRequestContext(new RequestContext(oldDomain));
     }
 
     public void setJavaScript(boolean value){
@@ -390,6 +384,10 @@ public class NinjaWebView extends WebView implements AlbumController {
         return fingerPrintProtection;
     }
 
+    public BlockingStats getBlockingStats() {
+        return webViewClient.getBlockingStats();
+    }
+
     public boolean isAdBlockEnabled() {
         return adBlockEnabled;
     }
@@ -428,12 +426,14 @@ public class NinjaWebView extends WebView implements AlbumController {
         getSettings().setUseWideViewPort(desktopMode);
         getSettings().setSupportZoom(desktopMode);
         getSettings().setLoadWithOverviewMode(desktopMode);
+        webViewClient.updateDocumentStartScript(this);
 
         if (reload) { reload();}
     }
 
     public void toggleAllowFingerprint (boolean reload) {
         fingerPrintProtection = !isFingerPrintProtection();
+        webViewClient.updateDocumentStartScript(this);
         if (reload) { reload();}
     }
 
@@ -450,18 +450,15 @@ public class NinjaWebView extends WebView implements AlbumController {
         updateFavicon();
         if (isLoadFinish()) {
             //Save faviconView for existing bookmarks, but only if loading is finished to avoid "wrong" favicons
-            FaviconHelper faviconHelper = new FaviconHelper(context);
-            RecordAction action = new RecordAction(context);
-            action.open(false);
-            List<Record> list;
-            list = action.listBookmark(context, false, 0);
-            action.close();
-            for (Record listItem : list) {
-                if (listItem.getURL().equals(getUrl())) {
-                    if (faviconHelper.getFavicon(listItem.getURL()) == null)
-                        faviconHelper.addFavicon(getUrl(), getFavicon());
+            String url = getUrl();
+            Databases.write(() -> {
+                Record bookmark = RecordAction.findBookmark(context, url);
+                if (bookmark != null) {
+                    FaviconHelper faviconHelper = FaviconHelper.getInstance(context);
+                    if (faviconHelper.getFavicon(bookmark.getURL()) == null)
+                        faviconHelper.addFavicon(url, favicon);
                 }
-            }
+            });
         }
     }
 
@@ -504,5 +501,6 @@ public class NinjaWebView extends WebView implements AlbumController {
         domStorageInherited = settings.charAt(5) == '1';
         getSettings().setJavaScriptEnabled(settings.charAt(6) == '1');
         javaScriptInherited = settings.charAt(7) == '1';
+        webViewClient.updateDocumentStartScript(this);
     }
 }
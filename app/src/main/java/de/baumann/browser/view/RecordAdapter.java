@@ -3,7 +3,6 @@ package de.baumann.browser.view;
 import android.content.Context;
 import androidx.annotation.NonNull;
 
-import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -55,20 +54,20 @@ public class RecordAdapter extends ArrayAdapter<Record> {
         }
 
         Record record = list.get(position);
+        if (record == null) {
+            //placeholder until the page of the bookmark overview is read
+            holder.title.setText("");
+            holder.icon.setImageDrawable(null);
+            holder.favicon.setVisibility(View.INVISIBLE);
+            return view;
+        }
         long filter = record.getIconColor();
         holder.title.setText(record.getTitle());
 
         HelperUnit.setFilterIcons(holder.icon,filter);
 
         holder.favicon.setVisibility(View.VISIBLE);
-        FaviconHelper faviconHelper = new FaviconHelper(context);
-        Bitmap bitmap=faviconHelper.getFavicon(record.getURL());
-
-        if (bitmap != null){
-            holder.favicon.setImageBitmap(bitmap);
-        }else {
-            holder.favicon.setImageResource(R.drawable.icon_image_broken);
-        }
+        FaviconHelper.loadFavicon(context, holder.favicon, record.getURL(), R.drawable.icon_image_broken);
 
         return view;
     }
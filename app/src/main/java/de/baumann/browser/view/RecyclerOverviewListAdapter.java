@@ -45,7 +45,7 @@ public class RecyclerOverviewListAdapter extends RecyclerView.Adapter<RecyclerOv
         this.context = context;
         this.userScripts = userScripts;
         this.editText = editText;
-        this.database = new UserScriptsHelper(context);
+        this.database = UserScriptsHelper.getInstance(context);
     }
 
     @Override
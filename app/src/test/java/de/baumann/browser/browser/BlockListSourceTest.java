@@ -0,0 +1,143 @@
+package de.baumann.browser.browser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.baumann.browser.unit.BrowserUnit;
+
+//conditional download of block lists with BrowserUnit.openListConnection, saveListValidators and isListUpdateDue, and rule parsing
+public class BlockListSourceTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String MODIFIED = "Mon, 01 Jan 2024 00:00:00 GMT";
+    private static final byte[] BODY = "||ads.example^\n".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final List<Headers> requests = new ArrayList<>();
+    private volatile boolean notModified;
+    private final MapPreferences sp = new MapPreferences();
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            synchronized (requests) {
+                requests.add(exchange.getRequestHeaders());
+            }
+            if (notModified) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                exchange.getResponseHeaders().set("Last-Modified", MODIFIED);
+                exchange.sendResponseHeaders(200, BODY.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(BODY);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        file = new File(folder.getRoot(), "list.txt");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private Headers lastRequest() {
+        synchronized (requests) {
+            return requests.get(requests.size() - 1);
+        }
+    }
+
+    @Test
+    public void okStoresValidators() throws IOException {
+        BlockListSource source = new BlockListSource(url("/list"), file, false);
+        source.fetch(sp);
+
+        assertTrue(source.changed);
+        assertEquals(1, source.count);
+        assertTrue(source.builders[BlockListSource.BLOCK].build().matches("ads.example", 0, "ads.example".length()));
+        assertEquals(url("/list"), sp.getString("list_list.txt_url", ""));
+        assertEquals(ETAG, sp.getString("list_list.txt_etag", ""));
+        assertEquals(MODIFIED, sp.getString("list_list.txt_modified", ""));
+        assertFalse(BrowserUnit.isListUpdateDue(sp, file, 7));
+    }
+
+    @Test
+    public void nextRequestIsConditional() throws IOException {
+        new BlockListSource(url("/list"), file, false).fetch(sp);
+        assertNull(lastRequest().getFirst("If-None-Match"));
+
+        new BlockListSource(url("/list"), file, false).fetch(sp);
+        assertEquals(ETAG, lastRequest().getFirst("If-None-Match"));
+        assertEquals(MODIFIED, lastRequest().getFirst("If-Modified-Since"));
+    }
+
+    @Test
+    public void notModifiedOnlyUpdatesCheckTime() throws IOException {
+        new BlockListSource(url("/list"), file, false).fetch(sp);
+        byte[] cached = Files.readAllBytes(file.toPath());
+        file.setLastModified(0);
+        sp.edit().putLong("list_list.txt_checked", 0).apply();
+        assertTrue(BrowserUnit.isListUpdateDue(sp, file, 7));
+
+        notModified = true;
+        BlockListSource source = new BlockListSource(url("/list"), file, false);
+        source.fetch(sp);
+
+        assertFalse(source.changed);
+        assertNull(source.builders);  //nothing parsed, the caller reads the cached file
+        assertEquals(0, file.lastModified());
+        assertEquals(new String(cached, StandardCharsets.UTF_8), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals(ETAG, sp.getString("list_list.txt_etag", ""));
+        assertTrue(sp.getLong("list_list.txt_checked", 0) > 0);
+        assertFalse(BrowserUnit.isListUpdateDue(sp, file, 7));
+    }
+
+    @Test
+    public void importantRulesAreSkipped() {
+        assertNull(BlockListSource.parseLine("||ads.example^$important"));
+        assertNull(BlockListSource.parseLine("||ads.example^$third-party,important"));
+        assertEquals(BlockListSource.BLOCK, BlockListSource.parseLine("||ads.example^").type);
+    }
+
+    @Test
+    public void changedUrlDropsValidators() throws IOException {
+        new BlockListSource(url("/list"), file, false).fetch(sp);
+
+        new BlockListSource(url("/other"), file, false).fetch(sp);
+        assertNull(lastRequest().getFirst("If-None-Match"));
+        assertNull(lastRequest().getFirst("If-Modified-Since"));
+        assertEquals(url("/other"), sp.getString("list_list.txt_url", ""));
+    }
+}
@@ -0,0 +1,134 @@
+package de.baumann.browser.browser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class HostTrieTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static HostTrie trie(String... hosts) {
+        HostTrie.Builder builder = new HostTrie.Builder();
+        for (String host : hosts) builder.add(host);
+        return builder.build();
+    }
+
+    private static boolean matches(HostTrie trie, String host) {
+        return trie.matches(host, 0, host.length());
+    }
+
+    @Test
+    public void exactAndParentDomains() {
+        HostTrie trie = trie("ads.example.com", "tracker.net");
+        assertEquals(2, trie.size());
+        assertTrue(matches(trie, "ads.example.com"));
+        assertTrue(matches(trie, "cdn.ads.example.com"));
+        assertTrue(matches(trie, "a.b.tracker.net"));
+        assertFalse(matches(trie, "example.com"));
+        assertFalse(matches(trie, "www.example.com"));
+        assertFalse(matches(trie, "bads.example.com"));
+        assertFalse(matches(trie, "tracker.network"));
+        assertFalse(matches(HostTrie.EMPTY, "ads.example.com"));
+    }
+
+    @Test
+    public void topLevelDomainAloneNeverMatches() {
+        HostTrie trie = trie("com", "example.org");
+        assertFalse(matches(trie, "com"));
+        assertFalse(matches(trie, "example.com"));
+        assertFalse(matches(trie, "org"));
+        assertTrue(matches(trie, "www.example.org"));
+    }
+
+    @Test
+    public void uppercaseAndTrailingDot() {
+        HostTrie trie = trie("Ads.Example.COM.", "  tracker.net  ", "bad host.com", "a..b.com");
+        assertEquals(2, trie.size());
+        assertTrue(matches(trie, "ads.example.com"));
+        assertTrue(matches(trie, "CDN.ADS.EXAMPLE.COM"));
+        assertTrue(matches(trie, "Tracker.Net"));
+
+        //callers pass the host without its trailing dots
+        String host = "ads.example.com..";
+        assertTrue(trie.matches(host, 0, host.length() - 2));
+    }
+
+    @Test
+    public void hostWithinUrl() {
+        HostTrie trie = trie("ads.example.com");
+        String url = "https://cdn.ads.example.com/path/ads.example.com?q=1";
+        int start = "https://".length();
+        int end = url.indexOf('/', start);
+        assertTrue(trie.matches(url, start, end));
+        assertFalse(trie.matches(url, start + 4, start + 7));  //"ads" alone
+        assertFalse(trie.matches(url, end + 1, url.indexOf('/', end + 1)));  //"path"
+
+        String other = "https://www.example.com/ads.example.com";
+        assertFalse(trie.matches(other, start, other.indexOf('/', start)));
+    }
+
+    private static String host(String url) {
+        long range = HostTrie.hostRange(url);
+        return range < 0 ? null : url.substring((int) (range >>> 32), (int) range);
+    }
+
+    @Test
+    public void hostRange() {
+        assertEquals("ads.example.com", host("https://ads.example.com/path?q=1#x"));
+        assertEquals("ads.example.com", host("HTTP://ads.example.com"));
+        assertEquals("ads.example.com", host("view-source:https://ads.example.com/"));
+        assertEquals("ads.example.com", host("https://user:pw@ads.example.com:8080/a@b"));
+        assertEquals("ads.example.com", host("https://ads.example.com../"));
+        assertEquals("ads.example.com", host("https://ads.example.com?q=a/b"));
+        assertEquals(null, host("https://[::1]/"));
+        assertEquals(null, host("https:///path"));
+        assertEquals(null, host("ftp://ads.example.com/"));
+        assertEquals(null, host("data:text/plain,https://ads.example.com"));
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws IOException {
+        HostTrie trie = trie("ads.example.com", "tracker.net", "x.y.z.example.org");
+        File file = new File(folder.getRoot(), "trie.bin");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            trie.writeTo(channel);
+        }
+        assertEquals(trie.byteSize(), file.length());
+
+        HostTrie read;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            read = HostTrie.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        assertEquals(trie.size(), read.size());
+        assertEquals(trie.checksum(), read.checksum());
+        assertTrue(matches(read, "cdn.ads.example.com"));
+        assertTrue(matches(read, "tracker.net"));
+        assertTrue(matches(read, "x.y.z.example.org"));
+        assertFalse(matches(read, "y.z.example.org"));
+        assertFalse(matches(read, "example.com"));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedSnapshot() throws IOException {
+        HostTrie trie = trie("ads.example.com");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trie.writeTo(Channels.newChannel(out));
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        buffer.limit(buffer.limit() - 1);
+        HostTrie.read(buffer);
+    }
+}
@@ -0,0 +1,24 @@
+package de.baumann.browser.browser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class NinjaWebViewClientTest {
+
+    @Test
+    public void extensionOfLastPathSegment() {
+        assertEquals("mp4", NinjaWebViewClient.getExtension("/videos/clip.MP4"));
+        assertEquals("webm", NinjaWebViewClient.getExtension("/a.b/c.d/clip.webm"));
+        assertNull(NinjaWebViewClient.getExtension("/a.b/clip"));
+        assertNull(NinjaWebViewClient.getExtension("/"));
+        assertNull(NinjaWebViewClient.getExtension(""));
+    }
+
+    @Test
+    public void noPath() {
+        //Uri.getPath() of opaque uris like data:, about:, blob: and javascript:
+        assertNull(NinjaWebViewClient.getExtension(null));
+    }
+}
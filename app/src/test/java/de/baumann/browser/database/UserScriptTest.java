@@ -0,0 +1,112 @@
+package de.baumann.browser.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+//metadata parsing of UserScript.setScript and getTypefromScript
+public class UserScriptTest {
+
+    private static final String FULL = UserScript.META_BEGIN + "\n" +
+            "// @name         Example\n" +
+            "// @namespace    https://example.com/scripts\n" +
+            "// @version      1.2.3\n" +
+            "// @match        https://example.com/*\n" +
+            "//   @include    *://*.example.org/*\n" +
+            "// @exclude      https://example.com/private/*\n" +
+            "// @run-at       document-start\n" +
+            "// @grant        none\n" +
+            UserScript.META_END + "\n" +
+            "// @match https://after.example.com/*\n" +
+            "console.log('example');";
+
+    private static UserScript script(String script) {
+        return new UserScript(1, script, UserScript.DOC_END, 0, true);
+    }
+
+    @Test
+    public void fullBlock() {
+        UserScript script = script(FULL);
+        assertEquals("Example", script.getName());
+        assertEquals("https://example.com/scripts", script.getNameSpace());
+        assertEquals("1.2.3", script.getVersion());
+        assertEquals(Collections.singletonList("https://example.com/*"), script.getMatchPatterns());  //not the one after the end marker
+        assertEquals(Collections.singletonList("*://*.example.org/*"), script.getIncludes());
+        assertEquals(Collections.singletonList("https://example.com/private/*"), script.getExcludes());
+        assertEquals(UserScript.DOC_START, UserScript.getTypefromScript(FULL));
+        assertEquals(FULL, script.getScript());
+    }
+
+    @Test
+    public void missingBlock() {
+        for (String text : new String[] {"console.log('no metadata');", "", null}) {
+            UserScript script = script(text);
+            assertEquals("@name", script.getName());
+            assertEquals("@namespace", script.getNameSpace());
+            assertNull(script.getVersion());
+            assertTrue(script.getMatchPatterns().isEmpty());
+            assertTrue(script.getIncludes().isEmpty());
+            assertTrue(script.getExcludes().isEmpty());
+            assertEquals(UserScript.DOC_END, UserScript.getTypefromScript(text));
+        }
+    }
+
+    @Test
+    public void missingEndMarker() {
+        //without the end marker every "// @key" line of the script is metadata
+        String text = UserScript.META_BEGIN + "\n" +
+                "// @name Unterminated\n" +
+                "// @match https://example.com/*\n" +
+                "var x = 1;\n" +
+                "// @match https://later.example.com/*\n" +
+                "// @run-at document-start";
+        UserScript script = script(text);
+        assertEquals("Unterminated", script.getName());
+        assertEquals(Arrays.asList("https://example.com/*", "https://later.example.com/*"), script.getMatchPatterns());
+        assertEquals(UserScript.DOC_START, UserScript.getTypefromScript(text));
+    }
+
+    @Test
+    public void repeatedKeys() {
+        String text = UserScript.META_BEGIN + "\n" +
+                "// @name First\n" +
+                "// @name Second\n" +
+                "// @namespace one\n" +
+                "// @namespace two\n" +
+                "// @version 1\n" +
+                "// @version 2\n" +
+                "// @match https://a.example.com/*\n" +
+                "// @match https://b.example.com/*\n" +
+                "// @match\n" +
+                "// @include https://c.example.com/*\n" +
+                "// @include https://d.example.com/*\n" +
+                "// @exclude https://a.example.com/x\n" +
+                "// @exclude https://b.example.com/x\n" +
+                "// @run-at document-start\n" +
+                "// @run-at document-idle\n" +
+                UserScript.META_END;
+        UserScript script = script(text);
+        assertEquals("First", script.getName());
+        assertEquals("one", script.getNameSpace());
+        assertEquals("1", script.getVersion());
+        assertEquals(Arrays.asList("https://a.example.com/*", "https://b.example.com/*"), script.getMatchPatterns());
+        assertEquals(Arrays.asList("https://c.example.com/*", "https://d.example.com/*"), script.getIncludes());
+        assertEquals(Arrays.asList("https://a.example.com/x", "https://b.example.com/x"), script.getExcludes());
+        assertEquals(UserScript.DOC_END, UserScript.getTypefromScript(text));  //the last @run-at counts, unknown values are document-end
+    }
+
+    @Test
+    public void setScriptParsesAgain() {
+        UserScript script = script(FULL);
+        script.setScript("console.log('metadata removed');");
+        assertEquals("@name", script.getName());
+        assertNull(script.getVersion());
+        assertTrue(script.getMatchPatterns().isEmpty());
+        assertTrue(script.getExcludes().isEmpty());
+    }
+}
@@ -0,0 +1,122 @@
+package de.baumann.browser.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.baumann.browser.database.UserScript;
+
+public class ScriptIndexTest {
+
+    private final List<String> errors = new ArrayList<>();
+
+    private static UserScript script(String... metadata) {
+        StringBuilder script = new StringBuilder(UserScript.META_BEGIN).append('\n');
+        for (String line : metadata) script.append("// ").append(line).append('\n');
+        script.append(UserScript.META_END).append('\n').append("console.log('test');");
+        return new UserScript(0, script.toString(), UserScript.DOC_END, 0, true);
+    }
+
+    private ScriptIndex index(UserScript... scripts) {
+        return new ScriptIndex(Arrays.asList(scripts), errors);
+    }
+
+    private static boolean matches(ScriptIndex index, String url) {
+        return !index.find(url).isEmpty();
+    }
+
+    @Test
+    public void subdomainWildcardMatchesBareDomain() {
+        ScriptIndex index = index(script("@match *://*.example.com/*"));
+        assertTrue(matches(index, "https://example.com/"));
+        assertTrue(matches(index, "https://www.example.com/page"));
+        assertTrue(matches(index, "http://a.b.example.com/"));
+        assertFalse(matches(index, "https://badexample.com/"));
+        assertFalse(matches(index, "https://example.com.evil.org/"));
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void schemes() {
+        ScriptIndex any = index(script("@match *://example.com/*"));
+        assertTrue(matches(any, "http://example.com/"));
+        assertTrue(matches(any, "https://example.com/"));
+        assertFalse(matches(any, "ftp://example.com/"));
+
+        ScriptIndex http = index(script("@match http://example.com/*"));
+        assertTrue(matches(http, "http://example.com/"));
+        assertFalse(matches(http, "https://example.com/"));
+
+        ScriptIndex https = index(script("@match https://example.com/*"));
+        assertTrue(matches(https, "HTTPS://Example.com/"));
+        assertFalse(matches(https, "http://example.com/"));
+    }
+
+    @Test
+    public void trailingSlashMatchesAnyPath() {
+        ScriptIndex index = index(script("@match https://example.com/"));
+        assertTrue(matches(index, "https://example.com/"));
+        assertTrue(matches(index, "https://example.com/a/b?q=1"));
+
+        ScriptIndex exact = index(script("@match https://example.com/path"));
+        assertTrue(matches(exact, "https://example.com/path"));
+        assertFalse(matches(exact, "https://example.com/path/more"));
+        assertFalse(matches(exact, "https://example.com/"));
+    }
+
+    @Test
+    public void regexPatterns() {
+        ScriptIndex index = index(script("@match /^https://example\\.com/\\d+$/"));
+        assertTrue(matches(index, "https://example.com/42"));
+        assertFalse(matches(index, "https://example.com/page"));
+
+        ScriptIndex include = index(script("@include /.*\\.example\\.org/.*/"));
+        assertTrue(matches(include, "http://www.example.org/x"));
+        assertFalse(matches(include, "http://example.org/x"));
+    }
+
+    @Test
+    public void excludeWinsOverMatchAndInclude() {
+        UserScript matched = script("@match *://example.com/*", "@exclude *://example.com/private*");
+        UserScript included = script("@include https://example.org/*", "@exclude /.*logout.*/");
+        ScriptIndex index = index(matched, included);
+        assertEquals(Collections.singletonList(matched), index.find("https://example.com/public"));
+        assertTrue(index.find("https://example.com/private/page").isEmpty());
+        assertEquals(Collections.singletonList(included), index.find("https://example.org/home"));
+        assertTrue(index.find("https://example.org/logout").isEmpty());
+
+        //an exclude applies to its own script only
+        UserScript other = script("@match https://example.com/*");
+        assertEquals(Collections.singletonList(other), index(matched, other).find("https://example.com/private"));
+    }
+
+    @Test
+    public void invalidRegexIsCollected() {
+        UserScript invalid = script("@match /[/", "@include /(/", "@exclude /*/");
+        UserScript valid = script("@match https://example.com/*");
+        ScriptIndex index = index(invalid, valid);
+        assertEquals(3, errors.size());
+        assertTrue(errors.get(0).startsWith("@match: "));
+        assertTrue(errors.get(1).startsWith("@include: "));
+        assertTrue(errors.get(2).startsWith("@exclude: "));
+        assertEquals(Collections.singletonList(valid), index.find("https://example.com/"));
+    }
+
+    @Test
+    public void globBacktracking() {
+        assertTrue(ScriptIndex.glob("*ab*ab", "aabab"));
+        assertTrue(ScriptIndex.glob("/a*b*c", "/abbbcbc"));
+        assertTrue(ScriptIndex.glob("/*/*.js", "/lib/a.min.js"));
+        assertTrue(ScriptIndex.glob("**", ""));
+        assertFalse(ScriptIndex.glob("*.js", "/a.js.map"));
+        assertFalse(ScriptIndex.glob("/a*b", "/aaa"));
+        assertFalse(ScriptIndex.glob("/a", "/ab"));
+    }
+}
@@ -0,0 +1,129 @@
+package de.baumann.browser.browser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Lookups per second of HostTrie against the former HashSet of hosts.txt entries, which parsed every
+ * url with java.net.URI and built a String per parent domain. Run with "-prof gc" for the allocations
+ * per lookup, the retained heap of both structures is printed once per fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HostTrieBenchmark {
+
+    private static final int URLS = 1024;
+
+    @Param({"160000"})
+    int hostCount;
+
+    private Set<String> hashSet;
+    private HostTrie trie;
+    private final String[] urls = new String[URLS];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String[] hosts = new String[hostCount];
+        for (int i = 0; i < hostCount; i++) hosts[i] = randomHost(random);
+
+        long before = usedHeap();
+        Set<String> set = new HashSet<>();
+        for (String host : hosts) set.add(new String(host.toCharArray()));  //own copies, as if read from hosts.txt
+        long setBytes = usedHeap() - before;
+
+        before = usedHeap();
+        HostTrie.Builder builder = new HostTrie.Builder();
+        for (String host : hosts) builder.add(host);
+        HostTrie built = builder.build();
+        long trieBytes = usedHeap() - before;
+        System.out.printf(Locale.ROOT, "%n%d hosts: HashSet %,d bytes, HostTrie %,d bytes (%,d in its buffer)%n", hostCount, setBytes, trieBytes, built.byteSize());
+        hashSet = set;
+        trie = built;
+
+        //half of the requests go to subdomains of listed hosts, like the subresources of a page with ads
+        for (int i = 0; i < URLS; i++) {
+            String host = i % 2 == 0 ? "cdn." + hosts[random.nextInt(hostCount)] : "static." + randomHost(random);
+            urls[i] = "https://" + host + "/assets/" + i + "/image.png?width=" + random.nextInt(1000);
+        }
+    }
+
+    private static String randomHost(Random random) {
+        StringBuilder host = new StringBuilder();
+        int labels = 2 + random.nextInt(2);
+        for (int l = 0; l < labels; l++) {
+            int length = 3 + random.nextInt(8);
+            for (int c = 0; c < length; c++) host.append((char) ('a' + random.nextInt(26)));
+            host.append('.');
+        }
+        String[] tlds = {"com", "net", "org", "de", "io"};
+        return host.append(tlds[random.nextInt(tlds.length)]).toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void hashSet(Blackhole blackhole) {
+        for (String url : urls) blackhole.consume(isAdHashSet(url));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void hostTrie(Blackhole blackhole) {
+        for (String url : urls) blackhole.consume(isAdTrie(url));
+    }
+
+    //the former AdBlock.isAd with getDomain and splitDomain
+    private boolean isAdHashSet(String url) {
+        String domain;
+        try {
+            url = url.toLowerCase(Locale.getDefault());
+            int index = url.indexOf('/', 8);
+            if (index != -1) url = url.substring(0, index);
+            domain = new URI(url).getHost();
+        } catch (URISyntaxException u) {
+            return false;
+        }
+        if (domain == null || domain.isEmpty()) return false;
+        String[] segments = domain.split("\\.");
+        if (segments.length < 2) return false;
+        StringBuilder current = new StringBuilder();
+        for (int i = segments.length - 1; i >= 0; i--) {
+            current.insert(0, segments[i]);
+            if (i < segments.length - 1 && hashSet.contains(current.toString())) return true;
+            if (i > 0) current.insert(0, ".");
+        }
+        return false;
+    }
+
+    //AdBlock.isAd(String) without the exception trie
+    private boolean isAdTrie(String url) {
+        long range = HostTrie.hostRange(url);
+        return range >= 0 && trie.matches(url, (int) (range >>> 32), (int) range);
+    }
+}
@@ -0,0 +1,161 @@
+package de.baumann.browser.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import de.baumann.browser.unit.RecordUnit;
+
+/**
+ * Time per bookmark lookup and per site permission change, as run for every list row and navigation.
+ * The *PerCall benchmarks open the database, check its version like SQLiteOpenHelper, run the query and
+ * close it again, as the former RecordAction, FaviconHelper and UserScriptsHelper did on the UI thread.
+ * The shared* benchmarks use one WAL connection with statements compiled once, like RecordHelper.getInstance.
+ * Android's SQLiteDatabase does not run on the JVM, sqlite-jdbc runs the same SQLite library behind it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseChurnBenchmark {
+
+    private static final int BOOKMARKS = 1000;
+    private static final String FIND_BOOKMARK = "SELECT " + RecordUnit.COLUMN_TITLE + ", " + RecordUnit.COLUMN_URL + ", " + RecordUnit.COLUMN_TIME
+            + " FROM " + RecordUnit.TABLE_BOOKMARK + " WHERE " + RecordUnit.COLUMN_URL + " = ?";
+    private static final String ADD_HOST = "INSERT OR IGNORE INTO " + RecordUnit.TABLE_SITE_PERMISSIONS + " (" + RecordUnit.COLUMN_HOST + ") VALUES (?)";
+    private static final String SET_PERMISSION = "UPDATE " + RecordUnit.TABLE_SITE_PERMISSIONS + " SET " + RecordUnit.PERMISSION_JAVASCRIPT + " = ? WHERE " + RecordUnit.COLUMN_HOST + " = ?";
+
+    private File dir;
+    private String url;  //database of the per call benchmarks, in the default rollback journal mode
+    private Connection shared;
+    private PreparedStatement findBookmark;
+    private PreparedStatement addHost;
+    private PreparedStatement setPermission;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        dir = Files.createTempDirectory("browser").toFile();
+        url = create("browser.db");
+        shared = DriverManager.getConnection(create("shared.db"));
+        try (Statement statement = shared.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+        }
+        findBookmark = shared.prepareStatement(FIND_BOOKMARK);
+        addHost = shared.prepareStatement(ADD_HOST);
+        setPermission = shared.prepareStatement(SET_PERMISSION);
+    }
+
+    private String create(String name) throws SQLException {
+        String url = "jdbc:sqlite:" + new File(dir, name).getPath();
+        try (Connection connection = DriverManager.getConnection(url); Statement statement = connection.createStatement()) {
+            statement.execute(RecordUnit.CREATE_SITE_PERMISSIONS);
+            statement.execute(RecordUnit.CREATE_BOOKMARK);
+            statement.execute(RecordUnit.CREATE_BOOKMARK_URL_INDEX);
+            statement.execute("PRAGMA user_version = 4");
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + RecordUnit.TABLE_BOOKMARK
+                    + " (" + RecordUnit.COLUMN_TITLE + ", " + RecordUnit.COLUMN_URL + ", " + RecordUnit.COLUMN_TIME + ") VALUES (?, ?, ?)")) {
+                for (int i = 0; i < BOOKMARKS; i++) {
+                    insert.setString(1, "Bookmark " + i);
+                    insert.setString(2, bookmarkUrl(i));
+                    insert.setLong(3, i);
+                    insert.executeUpdate();
+                }
+            }
+            connection.commit();
+        }
+        return url;
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        shared.close();
+        File[] files = dir.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        dir.delete();
+    }
+
+    private static String bookmarkUrl(int i) {
+        return "https://www.example" + i + ".com/page";
+    }
+
+    private static String host(int i) {
+        return "www.example" + i + ".com";
+    }
+
+    //the former per call helper: open, version check of SQLiteOpenHelper, one statement, close
+    private Connection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement(); ResultSet version = statement.executeQuery("PRAGMA user_version")) {
+            version.next();
+        }
+        return connection;
+    }
+
+    private static String findBookmark(PreparedStatement statement, String bookmarkUrl) throws SQLException {
+        statement.setString(1, bookmarkUrl);
+        try (ResultSet result = statement.executeQuery()) {
+            return result.next() ? result.getString(1) : null;
+        }
+    }
+
+    private static void setPermission(PreparedStatement add, PreparedStatement set, String host, int value) throws SQLException {
+        add.setString(1, host);
+        add.executeUpdate();
+        set.setInt(1, value);
+        set.setString(2, host);
+        set.executeUpdate();
+    }
+
+    @Benchmark
+    public String findBookmarkPerCall() throws SQLException {
+        int i = next++ % BOOKMARKS;
+        try (Connection connection = open(); PreparedStatement statement = connection.prepareStatement(FIND_BOOKMARK)) {
+            return findBookmark(statement, bookmarkUrl(i));
+        }
+    }
+
+    @Benchmark
+    public String findBookmarkShared() throws SQLException {
+        int i = next++ % BOOKMARKS;
+        return findBookmark(findBookmark, bookmarkUrl(i));
+    }
+
+    @Benchmark
+    public void setPermissionPerCall() throws SQLException {
+        int i = next++;
+        try (Connection connection = open();
+             PreparedStatement add = connection.prepareStatement(ADD_HOST);
+             PreparedStatement set = connection.prepareStatement(SET_PERMISSION)) {
+            setPermission(add, set, host(i % BOOKMARKS), i & 1);
+        }
+    }
+
+    @Benchmark
+    public void setPermissionShared() throws SQLException {
+        int i = next++;
+        setPermission(addHost, setPermission, host(i % BOOKMARKS), i & 1);
+    }
+}